@@ -0,0 +1,133 @@
+package com.example.nutrago.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.nutrago.models.CartItem;
+import com.example.nutrago.models.CartSummary;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * The cart holds one line per product with a quantity, whichever write path
+ * (single tap, buffered taps, set, remove) changed it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHelperCartTest {
+
+    private static final String TEST_DB = "nutrago_cart_test.db";
+    private static final double DELTA = 1e-9;
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+    private int firstProductId;
+    private int secondProductId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        int categoryId = dbHelper.getAllCategories().get(0).getId();
+        firstProductId = (int) dbHelper.addProduct("Whey", "", 10.0, "protein_powder", categoryId);
+        secondProductId = (int) dbHelper.addProduct("Bar", "", 2.5, "protein_bar", categoryId);
+        dbHelper.clearCart();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void repeatedAdds_keepOneLineWithTheQuantity() {
+        dbHelper.addToCart(firstProductId);
+        dbHelper.addToCart(firstProductId);
+        dbHelper.addToCart(firstProductId);
+
+        List<CartItem> items = dbHelper.getCartItems();
+        assertEquals(1, items.size());
+        assertEquals(firstProductId, items.get(0).getProductId());
+        assertEquals(3, items.get(0).getQuantity());
+        assertEquals(30.0, items.get(0).getLineTotal(), DELTA);
+    }
+
+    @Test
+    public void linesKeepTheOrderTheyWereFirstAdded() {
+        dbHelper.addToCart(secondProductId);
+        dbHelper.addToCart(firstProductId);
+        dbHelper.addToCart(secondProductId);
+
+        List<CartItem> items = dbHelper.getCartItems();
+        assertEquals(2, items.size());
+        assertEquals(secondProductId, items.get(0).getProductId());
+        assertEquals(firstProductId, items.get(1).getProductId());
+    }
+
+    @Test
+    public void takingAwayTheLastUnit_deletesTheLine() {
+        dbHelper.changeCartQuantity(firstProductId, 2);
+
+        assertTrue(dbHelper.changeCartQuantity(firstProductId, -1));
+        assertEquals(1, dbHelper.getCartQuantity(firstProductId));
+
+        assertTrue(dbHelper.changeCartQuantity(firstProductId, -1));
+        assertEquals(0, dbHelper.getCartQuantity(firstProductId));
+        assertTrue(dbHelper.getCartItems().isEmpty());
+    }
+
+    @Test
+    public void bufferedDeltas_landOnTheSameLines() {
+        dbHelper.addToCart(firstProductId);
+        Map<Integer, Integer> deltas = new HashMap<>();
+        deltas.put(firstProductId, 4);
+        deltas.put(secondProductId, 2);
+
+        assertTrue(dbHelper.applyCartDeltas(deltas));
+
+        assertEquals(2, dbHelper.getCartItems().size());
+        assertEquals(5, dbHelper.getCartQuantity(firstProductId));
+        assertEquals(2, dbHelper.getCartQuantity(secondProductId));
+    }
+
+    @Test
+    public void setQuantityToZero_removesTheLine() {
+        dbHelper.changeCartQuantity(firstProductId, 3);
+
+        assertTrue(dbHelper.setCartQuantity(firstProductId, 7));
+        assertEquals(7, dbHelper.getCartQuantity(firstProductId));
+
+        assertTrue(dbHelper.setCartQuantity(firstProductId, 0));
+        assertTrue(dbHelper.getCartItems().isEmpty());
+    }
+
+    @Test
+    public void summary_sumsPriceTimesQuantity() {
+        dbHelper.changeCartQuantity(firstProductId, 2);
+        dbHelper.changeCartQuantity(secondProductId, 4);
+
+        CartSummary summary = dbHelper.getCartSummary();
+        assertEquals(30.0, summary.getTotal(), DELTA);
+        assertEquals(6, summary.getItemCount());
+    }
+
+    @Test
+    public void emptyCart_summarisesToZero() {
+        CartSummary summary = dbHelper.getCartSummary();
+        assertNotNull(summary);
+        assertTrue(summary.isEmpty());
+        assertEquals(0.0, summary.getTotal(), DELTA);
+    }
+}
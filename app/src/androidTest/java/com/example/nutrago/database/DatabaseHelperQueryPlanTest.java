@@ -0,0 +1,205 @@
+package com.example.nutrago.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Explains the exact SQL DatabaseHelper runs for the catalog pages, search and cart, and
+ * checks that none of it scans products or cart where an index seek is possible. Also checks
+ * that upgrading a v2 database folds duplicate cart rows into one per product.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHelperQueryPlanTest {
+
+    private static final String TEST_DB = "nutrago_query_plan_test.db";
+
+    // Older SQLite prints "SCAN TABLE products AS p", newer "SCAN p"; a full index scan is a SCAN too
+    private static final Pattern SCANS_PRODUCTS = Pattern.compile(
+            "^SCAN (TABLE )?(products|p)( |$)", Pattern.MULTILINE);
+    private static final Pattern SCANS_CART = Pattern.compile(
+            "^SCAN (TABLE )?(cart|c)( |$)", Pattern.MULTILINE);
+    private static final Pattern SEEKS_PRODUCT_BY_ID = Pattern.compile(
+            "^SEARCH (TABLE )?(products AS p|p) USING INTEGER PRIMARY KEY", Pattern.MULTILINE);
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        if (dbHelper != null) {
+            dbHelper.close();
+        }
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void allProductsPage_seeksCategoryIndexInBothHalves() {
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        String plan = explain(DatabaseHelper.PRODUCTS_PAGE_QUERY, "1", "40", "30", "1", "30", "30");
+
+        assertNoTableScan(plan);
+        assertTrue(plan, count(plan, DatabaseHelper.INDEX_PRODUCTS_CATEGORY) >= 2);
+    }
+
+    @Test
+    public void categoryPage_seeksCategoryIndex() {
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        String plan = explain(DatabaseHelper.CATEGORY_PAGE_QUERY, "1", "40", "30");
+
+        assertNoTableScan(plan);
+        assertTrue(plan, plan.contains(DatabaseHelper.INDEX_PRODUCTS_CATEGORY));
+    }
+
+    @Test
+    public void productRows_areFetchedByPrimaryKey() {
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        String rowPlan = explain(DatabaseHelper.LIST_ROW_QUERY, "7");
+        String rowsPlan = explain(DatabaseHelper.listRowsByIdQuery(3), "7", "8", "9");
+
+        assertNoTableScan(rowPlan);
+        assertNoTableScan(rowsPlan);
+        assertTrue(rowPlan, rowPlan.contains("PRIMARY KEY"));
+        assertTrue(rowsPlan, rowsPlan.contains("PRIMARY KEY"));
+    }
+
+    @Test
+    public void search_usesFullTextIndex() {
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        String plan = explain(DatabaseHelper.searchRankingQuery(false), "whey*");
+
+        assertNoTableScan(plan);
+        // FTS4 index number 2 + column count: a MATCH against the whole table, not a full scan (0)
+        assertTrue(plan, plan.contains("VIRTUAL TABLE INDEX 4:"));
+    }
+
+    @Test
+    public void searchInCategory_seeksCategoryIndexForTheFilter() {
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        String plan = explain(DatabaseHelper.searchRankingQuery(true), "whey*", "1");
+
+        assertNoTableScan(plan);
+        assertTrue(plan, plan.contains("VIRTUAL TABLE INDEX 4:"));
+        assertTrue(plan, plan.contains(DatabaseHelper.INDEX_PRODUCTS_CATEGORY));
+    }
+
+    @Test
+    public void cartWrites_seekUniqueCartIndex() {
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        String[] plans = {
+                explain(DatabaseHelper.CART_ADD_SQL, "1", "7"),
+                explain(DatabaseHelper.CART_DECREMENT_SQL, "-1", "7", "-1"),
+                explain(DatabaseHelper.CART_SET_QUANTITY_SQL, "3", "7"),
+                explain(DatabaseHelper.CART_DELETE_SQL, "7"),
+                explain(DatabaseHelper.CART_QUANTITY_QUERY, "7")};
+
+        for (String plan : plans) {
+            assertNoTableScan(plan);
+            assertTrue(plan, plan.contains(DatabaseHelper.INDEX_CART_PRODUCT));
+        }
+    }
+
+    @Test
+    public void cartJoins_readCartOnceAndSeekEachProduct() {
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        // Every cart line is wanted, so the cart is read through; products must not be
+        for (String plan : new String[]{
+                explain(DatabaseHelper.CART_ITEMS_QUERY),
+                explain(DatabaseHelper.CART_SUMMARY_QUERY)}) {
+            assertFalse(plan, SCANS_PRODUCTS.matcher(plan).find());
+            assertTrue(plan, SEEKS_PRODUCT_BY_ID.matcher(plan).find());
+            assertTrue(plan, SCANS_CART.matcher(plan).find());
+        }
+    }
+
+    @Test
+    public void upgradeFromV2_deduplicatesCartAndAddsIndexes() {
+        SQLiteDatabase legacy = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(TEST_DB), null);
+        legacy.execSQL("CREATE TABLE categories(id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + "category_name TEXT NOT NULL UNIQUE, category_description TEXT, category_image TEXT)");
+        legacy.execSQL("CREATE TABLE products(id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL,"
+                + "description TEXT, price REAL NOT NULL, image_path TEXT, category_id INTEGER)");
+        legacy.execSQL("CREATE TABLE cart(id INTEGER PRIMARY KEY AUTOINCREMENT, product_id INTEGER,"
+                + "quantity INTEGER DEFAULT 1)");
+        insertCartRow(legacy, 1, 2);
+        insertCartRow(legacy, 2, 1);
+        insertCartRow(legacy, 1, 3);
+        legacy.setVersion(2);
+        legacy.close();
+
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery("SELECT product_id, quantity FROM cart ORDER BY product_id", null);
+        assertEquals(2, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(1, cursor.getInt(0));
+        assertEquals(5, cursor.getInt(1));
+        cursor.moveToNext();
+        assertEquals(2, cursor.getInt(0));
+        assertEquals(1, cursor.getInt(1));
+        cursor.close();
+
+        assertTrue(indexExists(db, DatabaseHelper.INDEX_PRODUCTS_CATEGORY));
+        assertTrue(indexExists(db, DatabaseHelper.INDEX_CART_PRODUCT));
+    }
+
+    private void assertNoTableScan(String plan) {
+        assertFalse(plan, SCANS_PRODUCTS.matcher(plan).find());
+        assertFalse(plan, SCANS_CART.matcher(plan).find());
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i != -1; i = text.indexOf(part, i + part.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    private String explain(String sql, String... args) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        int detailIndex = cursor.getColumnIndexOrThrow("detail");
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(detailIndex)).append('\n');
+        }
+        cursor.close();
+        return plan.toString();
+    }
+
+    private boolean indexExists(SQLiteDatabase db, String indexName) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new String[]{indexName});
+        boolean exists = cursor.moveToFirst();
+        cursor.close();
+        return exists;
+    }
+
+    private void insertCartRow(SQLiteDatabase db, int productId, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put("product_id", productId);
+        values.put("quantity", quantity);
+        db.insert("cart", null, values);
+    }
+}
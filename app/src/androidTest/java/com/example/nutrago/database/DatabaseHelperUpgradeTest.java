@@ -0,0 +1,137 @@
+package com.example.nutrago.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.nutrago.models.Product;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Opens a v2 database (categories, products without image sizes, duplicate cart rows)
+ * and checks that every step up to v5 ran: v3 indexes and one cart row per product,
+ * v4 image size columns, v5 search index filled with the rows that were already there.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHelperUpgradeTest {
+
+    private static final String TEST_DB = "nutrago_upgrade_test.db";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+
+        SQLiteDatabase legacy = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(TEST_DB), null);
+        legacy.execSQL("CREATE TABLE categories(id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + "category_name TEXT NOT NULL UNIQUE, category_description TEXT, category_image TEXT)");
+        legacy.execSQL("CREATE TABLE products(id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL,"
+                + "description TEXT, price REAL NOT NULL, image_path TEXT, category_id INTEGER)");
+        legacy.execSQL("CREATE TABLE cart(id INTEGER PRIMARY KEY AUTOINCREMENT, product_id INTEGER,"
+                + "quantity INTEGER DEFAULT 1)");
+        legacy.execSQL("INSERT INTO categories(category_name) VALUES ('Protein'), ('Snacks')");
+        insertProduct(legacy, "Protein Bar", "Chocolate snack with whey", 1);
+        insertProduct(legacy, "Whey Isolate", "Fast protein", 1);
+        insertProduct(legacy, "Rice Cakes", "Light snack", 2);
+        insertCartRow(legacy, 1, 2);
+        insertCartRow(legacy, 1, 1);
+        legacy.setVersion(2);
+        legacy.close();
+
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void upgradeFromV2_runsEveryStepToV5() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        assertEquals(5, db.getVersion());
+        // v3
+        assertTrue(exists(db, "index", DatabaseHelper.INDEX_PRODUCTS_CATEGORY));
+        assertTrue(exists(db, "index", DatabaseHelper.INDEX_CART_PRODUCT));
+        assertEquals(3, dbHelper.getCartQuantity(1));
+        assertEquals(1, dbHelper.getCartItems().size());
+        // v4
+        assertTrue(hasColumn(db, "products", "image_detail_path"));
+        assertTrue(hasColumn(db, "products", "image_list_path"));
+        assertTrue(hasColumn(db, "products", "image_thumbnail_path"));
+        // v5
+        assertTrue(exists(db, "table", DatabaseHelper.TABLE_PRODUCTS_FTS));
+        // Nothing was lost on the way (a failed step drops and recreates every table)
+        assertEquals("Whey Isolate", dbHelper.getProductById(2).getName());
+    }
+
+    @Test
+    public void upgradedSearchIndex_findsExistingRowsByRelevance() {
+        List<Product> results = dbHelper.searchProducts("whey", 0, 10, null);
+
+        assertEquals(2, results.size());
+        // Name hit first, then the description hit
+        assertEquals("Whey Isolate", results.get(0).getName());
+        assertEquals("Protein Bar", results.get(1).getName());
+    }
+
+    @Test
+    public void upgradedSearchIndex_followsLaterWrites() {
+        long id = dbHelper.addProduct("Whey Cookies", "Baked", 4.0, "protein_bar", 2);
+        dbHelper.deleteProduct(2);
+
+        List<Product> results = dbHelper.searchProducts("whey", 2, 10, null);
+
+        assertEquals(1, results.size());
+        assertEquals(id, results.get(0).getId());
+    }
+
+    private boolean exists(SQLiteDatabase db, String type, String name) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = ? AND name = ?",
+                new String[]{type, name});
+        boolean exists = cursor.moveToFirst();
+        cursor.close();
+        return exists;
+    }
+
+    private boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        Cursor cursor = db.rawQuery("SELECT * FROM " + table + " LIMIT 0", null);
+        boolean has = cursor.getColumnIndex(column) != -1;
+        cursor.close();
+        return has;
+    }
+
+    private void insertProduct(SQLiteDatabase db, String name, String description, int categoryId) {
+        ContentValues values = new ContentValues();
+        values.put("name", name);
+        values.put("description", description);
+        values.put("price", 10.0);
+        values.put("image_path", "protein_bar");
+        values.put("category_id", categoryId);
+        db.insert("products", null, values);
+    }
+
+    private void insertCartRow(SQLiteDatabase db, int productId, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put("product_id", productId);
+        values.put("quantity", quantity);
+        db.insert("cart", null, values);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.nutrago.repository;
+
+import androidx.lifecycle.Observer;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.nutrago.models.CartSummary;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The in-memory cart total. The summary LiveData is posted to the main thread, so the
+ * LiveData checks wait for the main looper to go idle.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CartTotalsTest {
+
+    private static final double DELTA = 1e-9;
+
+    private CartTotals totals;
+
+    @Before
+    public void setUp() {
+        totals = new CartTotals();
+    }
+
+    @Test
+    public void add_accumulatesTotalAndUnits() {
+        totals.add(12.5, 2);
+        totals.add(3.0, 1);
+
+        CartSummary snapshot = totals.getSnapshot();
+        assertEquals(28.0, snapshot.getTotal(), DELTA);
+        assertEquals(3, snapshot.getItemCount());
+    }
+
+    @Test
+    public void negativeUnits_takeAwayFromTheTotal() {
+        totals.add(10.0, 3);
+        totals.add(10.0, -1);
+
+        CartSummary snapshot = totals.getSnapshot();
+        assertEquals(20.0, snapshot.getTotal(), DELTA);
+        assertEquals(2, snapshot.getItemCount());
+    }
+
+    @Test
+    public void removingMoreThanThereIs_floorsAtAnEmptyCart() {
+        totals.add(0.1, 3);
+        totals.add(0.1, -5);
+
+        CartSummary snapshot = totals.getSnapshot();
+        assertTrue(snapshot.isEmpty());
+        assertEquals(0.0, snapshot.getTotal(), DELTA);
+    }
+
+    @Test
+    public void reconcile_replacesTheRunningValue() {
+        // Many small additions drift; the database sum is the truth
+        for (int i = 0; i < 10; i++) totals.add(0.1, 1);
+
+        totals.reconcile(new CartSummary(1.0, 10));
+
+        assertEquals(1.0, totals.getSnapshot().getTotal(), 0.0);
+        assertEquals(10, totals.getSnapshot().getItemCount());
+    }
+
+    @Test
+    public void reconcileWithNull_keepsTheRunningValue() {
+        totals.add(5.0, 1);
+
+        totals.reconcile(null);
+
+        assertEquals(5.0, totals.getSnapshot().getTotal(), DELTA);
+    }
+
+    @Test
+    public void clear_emptiesTheCart() {
+        totals.add(5.0, 4);
+
+        totals.clear();
+
+        assertTrue(totals.getSnapshot().isEmpty());
+    }
+
+    @Test
+    public void summary_isPublishedToObservers() {
+        List<CartSummary> published = new ArrayList<>();
+        Observer<CartSummary> observer = published::add;
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                () -> totals.getSummary().observeForever(observer));
+
+        totals.add(4.0, 2);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                () -> totals.getSummary().removeObserver(observer));
+
+        CartSummary last = published.get(published.size() - 1);
+        assertEquals(8.0, last.getTotal(), DELTA);
+        assertEquals(2, last.getItemCount());
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.nutrago.repository;
+
+import android.app.Instrumentation;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Table versions and observer dispatch. notifyChanged posts to the main thread, so
+ * every check waits for the main looper to go idle first.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InvalidationTrackerTest {
+
+    private Instrumentation instrumentation;
+    private InvalidationTracker tracker;
+
+    @Before
+    public void setUp() {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        tracker = new InvalidationTracker();
+    }
+
+    @Test
+    public void notifyChanged_bumpsOnlyTheNamedTables() {
+        tracker.notifyChanged(InvalidationTracker.TABLE_CART);
+        instrumentation.waitForIdleSync();
+
+        assertEquals(1, tracker.getVersion(InvalidationTracker.TABLE_CART));
+        assertEquals(0, tracker.getVersion(InvalidationTracker.TABLE_PRODUCTS));
+        assertEquals(1, tracker.getVersion(InvalidationTracker.TABLE_CART, InvalidationTracker.TABLE_PRODUCTS));
+    }
+
+    @Test
+    public void observer_isCalledOnlyForItsTables() {
+        List<Set<String>> calls = new ArrayList<>();
+        InvalidationTracker.Observer observer = calls::add;
+        instrumentation.runOnMainSync(() -> tracker.addObserver(observer, InvalidationTracker.TABLE_CART));
+
+        tracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS);
+        tracker.notifyChanged(InvalidationTracker.TABLE_CART, InvalidationTracker.TABLE_PRODUCTS);
+        instrumentation.waitForIdleSync();
+
+        assertEquals(1, calls.size());
+        assertTrue(calls.get(0).contains(InvalidationTracker.TABLE_CART));
+        assertTrue(calls.get(0).contains(InvalidationTracker.TABLE_PRODUCTS));
+    }
+
+    @Test
+    public void removedObserver_isNotCalled() {
+        List<Set<String>> calls = new ArrayList<>();
+        InvalidationTracker.Observer observer = calls::add;
+        instrumentation.runOnMainSync(() -> {
+            tracker.addObserver(observer, InvalidationTracker.TABLE_CART);
+            tracker.removeObserver(observer);
+        });
+
+        tracker.notifyChanged(InvalidationTracker.TABLE_CART);
+        instrumentation.waitForIdleSync();
+
+        assertTrue(calls.isEmpty());
+        assertEquals(1, tracker.getVersion(InvalidationTracker.TABLE_CART));
+    }
+
+    @Test
+    public void versionLiveData_catchesUpAfterBeingInactive() {
+        LiveData<Integer> versions = tracker.createVersionLiveData(InvalidationTracker.TABLE_PRODUCTS);
+        List<Integer> delivered = new ArrayList<>();
+        Observer<Integer> observer = delivered::add;
+
+        instrumentation.runOnMainSync(() -> versions.observeForever(observer));
+        tracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS);
+        instrumentation.waitForIdleSync();
+        instrumentation.runOnMainSync(() -> versions.removeObserver(observer));
+
+        // Two changes while nobody watches, and one to a table it doesn't follow
+        tracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS);
+        tracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS);
+        tracker.notifyChanged(InvalidationTracker.TABLE_CART);
+        instrumentation.waitForIdleSync();
+        instrumentation.runOnMainSync(() -> versions.observeForever(observer));
+        instrumentation.runOnMainSync(() -> versions.removeObserver(observer));
+
+        assertEquals(3, delivered.size());
+        assertEquals(Integer.valueOf(0), delivered.get(0));
+        assertEquals(Integer.valueOf(1), delivered.get(1));
+        // One catch-up value on re-activation, not one per missed change
+        assertEquals(Integer.valueOf(3), delivered.get(2));
+    }
+}
@@ -11,7 +11,11 @@ import android.widget.LinearLayout;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.Lifecycle;
 
+import com.example.nutrago.repository.ProductRepository;
 import com.example.nutrago.ui.home.HomeFragment;
 import com.example.nutrago.ui.Gallery.GalleryFragment;
 import com.example.nutrago.ui.cart.CartFragment;
@@ -23,8 +27,19 @@ import com.google.android.material.bottomnavigation.BottomNavigationView;
 import android.view.MenuItem;
 import android.widget.ImageView;
 
+import java.util.ArrayList;
+
 public class MainActivity extends AppCompatActivity {
 
+    // Tabs are kept alive and switched with hide/show; beyond this many hidden tabs,
+    // the least recently used one is removed and rebuilt the next time it is opened
+    private static final int MAX_BACKGROUND_TABS = 2;
+    private static final String TAB_TAG_PREFIX = "tab_";
+    private static final String STATE_TAB_HISTORY = "tab_history";
+
+    // Menu item ids of the resident tabs, the one on screen last
+    private ArrayList<Integer> tabHistory = new ArrayList<>();
+
     private BottomNavigationView navView;
     private SoundPool soundPool;
     private int welcomeSoundId = -1;
@@ -46,10 +61,14 @@ public class MainActivity extends AppCompatActivity {
             // Setup Action Bar with large logo on the left
             setupActionBarWithLogo();
 
-            // First page to show
-            getSupportFragmentManager().beginTransaction()
-                    .replace(R.id.nav_host_fragment_activity_main, new HomeFragment())
-                    .commitAllowingStateLoss();
+            if (savedInstanceState == null) {
+                // First page to show
+                showTab(R.id.navigation_home);
+            } else {
+                // The fragment manager restored the tabs themselves
+                ArrayList<Integer> restored = savedInstanceState.getIntegerArrayList(STATE_TAB_HISTORY);
+                if (restored != null) tabHistory = restored;
+            }
 
             setupBottomNavigation();
 
@@ -150,71 +169,101 @@ public class MainActivity extends AppCompatActivity {
             navView.setOnItemSelectedListener(new BottomNavigationView.OnItemSelectedListener() {
                 @Override
                 public boolean onNavigationItemSelected(@NonNull MenuItem item) {
-                    Fragment selectedFragment = null;
-
-                    int itemId = item.getItemId();
-
                     try {
-                        if (itemId == R.id.navigation_home) {
-                            selectedFragment = new HomeFragment();
-                        } else if (itemId == R.id.navigation_gallery) {
-                            selectedFragment = new GalleryFragment();
-                        } else if (itemId == R.id.navigation_cart) {
-                            selectedFragment = new CartFragment();
-                        } else if (itemId == R.id.navigation_about) {
-                            selectedFragment = new AboutUsFragment();
-                        } else if (itemId == R.id.navigation_contact) {
-                            // Check if ContactUsFragment exists
-                            try {
-                                selectedFragment = new ContactUsFragment();
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                                // If ContactUsFragment creation fails, use fallback fragment
-                                selectedFragment = createSimpleContactFragment();
-                            }
-                        } else {
-                            // If no matching Fragment found, return to home page
-                            selectedFragment = new HomeFragment();
-                        }
-
-                        if (selectedFragment != null) {
-                            try {
-                                getSupportFragmentManager().beginTransaction()
-                                        .replace(R.id.nav_host_fragment_activity_main, selectedFragment)
-                                        .commitAllowingStateLoss(); // Use commitAllowingStateLoss instead of commit
-                                return true;
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                                // In case of error, return to home page
-                                try {
-                                    getSupportFragmentManager().beginTransaction()
-                                            .replace(R.id.nav_host_fragment_activity_main, new HomeFragment())
-                                            .commitAllowingStateLoss();
-                                } catch (Exception ex) {
-                                    ex.printStackTrace();
-                                }
-                                return true;
-                            }
-                        }
+                        showTab(item.getItemId());
                     } catch (Exception e) {
                         e.printStackTrace();
-                        // In case of general error, return to home page
+                        // In case of error, return to home page
                         try {
-                            getSupportFragmentManager().beginTransaction()
-                                    .replace(R.id.nav_host_fragment_activity_main, new HomeFragment())
-                                    .commitAllowingStateLoss();
+                            showTab(R.id.navigation_home);
                         } catch (Exception ex) {
                             ex.printStackTrace();
                         }
-                        return true;
                     }
-
-                    return false;
+                    return true;
                 }
             });
         }
     }
 
+    /**
+     * Brings a tab to the screen. A tab seen before is shown again exactly as it was left
+     * (views, loaded data, scroll position); only a tab opened for the first time, or one
+     * dropped by the resident bound, is created. Hidden tabs are held at STARTED so they
+     * get onPause, and the visible one is RESUMED.
+     */
+    private void showTab(int itemId) {
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        // Close any screen opened over the current tab (e.g. product details)
+        if (fragmentManager.getBackStackEntryCount() > 0) {
+            fragmentManager.popBackStackImmediate(null, FragmentManager.POP_BACK_STACK_INCLUSIVE);
+        }
+
+        FragmentTransaction transaction = fragmentManager.beginTransaction().setReorderingAllowed(true);
+        for (int tabId : tabHistory) {
+            Fragment tab = fragmentManager.findFragmentByTag(tabTag(tabId));
+            if (tabId != itemId && tab != null && !tab.isHidden()) {
+                transaction.hide(tab).setMaxLifecycle(tab, Lifecycle.State.STARTED);
+            }
+        }
+
+        Fragment target = fragmentManager.findFragmentByTag(tabTag(itemId));
+        if (target == null) {
+            transaction.add(R.id.nav_host_fragment_activity_main, createTabFragment(itemId), tabTag(itemId));
+        } else {
+            transaction.show(target).setMaxLifecycle(target, Lifecycle.State.RESUMED);
+        }
+
+        tabHistory.remove(Integer.valueOf(itemId));
+        tabHistory.add(itemId);
+        while (tabHistory.size() > MAX_BACKGROUND_TABS + 1) {
+            Fragment evicted = fragmentManager.findFragmentByTag(tabTag(tabHistory.remove(0)));
+            if (evicted != null) transaction.remove(evicted);
+        }
+        transaction.commitAllowingStateLoss();
+    }
+
+    private Fragment createTabFragment(int itemId) {
+        if (itemId == R.id.navigation_gallery) {
+            return new GalleryFragment();
+        } else if (itemId == R.id.navigation_cart) {
+            return new CartFragment();
+        } else if (itemId == R.id.navigation_about) {
+            return new AboutUsFragment();
+        } else if (itemId == R.id.navigation_contact) {
+            // Check if ContactUsFragment exists
+            try {
+                return new ContactUsFragment();
+            } catch (Exception e) {
+                e.printStackTrace();
+                // If ContactUsFragment creation fails, use fallback fragment
+                return createSimpleContactFragment();
+            }
+        }
+        // Home, or no matching Fragment found
+        return new HomeFragment();
+    }
+
+    private static String tabTag(int itemId) {
+        return TAB_TAG_PREFIX + itemId;
+    }
+
+    /**
+     * Opens a screen such as product details over the current tab. The tab is only hidden,
+     * so Back returns to it with its list and scroll position untouched.
+     */
+    public void openOverCurrentTab(Fragment fragment) {
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        FragmentTransaction transaction = fragmentManager.beginTransaction().setReorderingAllowed(true);
+        if (!tabHistory.isEmpty()) {
+            Fragment currentTab = fragmentManager.findFragmentByTag(tabTag(tabHistory.get(tabHistory.size() - 1)));
+            if (currentTab != null) transaction.hide(currentTab);
+        }
+        transaction.add(R.id.nav_host_fragment_activity_main, fragment)
+                .addToBackStack(null)
+                .commit();
+    }
+
     // Basic navigation setup in case main setup fails
     private void setupBasicNavigation() {
         try {
@@ -354,6 +403,12 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putIntegerArrayList(STATE_TAB_HISTORY, tabHistory);
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -362,7 +417,16 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        // No additional code needed here
+        // Write any buffered add-to-cart taps right away
+        ProductRepository.getInstance(this).flushCartWrites();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Taps made between onPause and now are queued too; nothing here waits on the database
+        ProductRepository.getInstance(this).flushCartWrites();
+        ProductRepository.getInstance(this).logCatalogCacheStats();
     }
 
     @Override
@@ -385,26 +449,20 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public void onBackPressed() {
         try {
-            // Handle back button control
-            Fragment currentFragment = getSupportFragmentManager().findFragmentById(R.id.nav_host_fragment_activity_main);
-
-            if (currentFragment instanceof HomeFragment) {
-                // If we're on home page, exit app
+            boolean onHome = !tabHistory.isEmpty()
+                    && tabHistory.get(tabHistory.size() - 1) == R.id.navigation_home;
+            if (getSupportFragmentManager().getBackStackEntryCount() > 0 || onHome) {
+                // Close the screen opened over the tab, or exit from the home page
                 super.onBackPressed();
+            } else if (navView != null) {
+                // If we're on another tab, return to home page (the listener shows it)
+                navView.setSelectedItemId(R.id.navigation_home);
             } else {
-                // If we're on another page, return to home page
-                getSupportFragmentManager().beginTransaction()
-                        .replace(R.id.nav_host_fragment_activity_main, new HomeFragment())
-                        .commitAllowingStateLoss();
-
-                // Update navigation bar
-                if (navView != null) {
-                    navView.setSelectedItemId(R.id.navigation_home);
-                }
+                showTab(R.id.navigation_home);
             }
         } catch (Exception e) {
             e.printStackTrace();
             super.onBackPressed();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,18 @@
+package com.example.nutrago;
+
+import android.app.Application;
+
+import com.example.nutrago.repository.ProductRepository;
+
+/**
+ * Creates the shared repository (and with it the one DatabaseHelper) when the process
+ * starts, and opens the database in the background while the first activity inflates.
+ */
+public class NutraGoApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ProductRepository.getInstance(this).warmUp();
+    }
+}
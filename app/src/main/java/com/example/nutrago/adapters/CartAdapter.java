@@ -1,8 +1,6 @@
 package com.example.nutrago.adapters;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,20 +10,49 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.nutrago.R;
-import com.example.nutrago.database.DatabaseHelper;
+import com.example.nutrago.images.ImageLoader;
+import com.example.nutrago.models.CartItem;
 import com.example.nutrago.models.Product;
+import com.example.nutrago.repository.ProductRepository;
 
-import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class CartAdapter extends RecyclerView.Adapter<CartAdapter.CartViewHolder> {
 
+    // السطر يُعرّف بالـ id الخاص بالمنتج، والمحتوى بالكمية وبيانات المنتج المعروضة
+    private static final DiffUtil.ItemCallback<CartItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<CartItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull CartItem oldItem, @NonNull CartItem newItem) {
+            return oldItem.getProductId() == newItem.getProductId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull CartItem oldItem, @NonNull CartItem newItem) {
+            Product oldProduct = oldItem.getProduct();
+            Product newProduct = newItem.getProduct();
+            return oldItem.getQuantity() == newItem.getQuantity()
+                    && Objects.equals(oldProduct.getName(), newProduct.getName())
+                    && oldProduct.getPrice() == newProduct.getPrice()
+                    && oldProduct.getImageResId() == newProduct.getImageResId()
+                    && Objects.equals(oldProduct.getImagePath(), newProduct.getImagePath())
+                    && Objects.equals(oldProduct.getThumbnailPath(), newProduct.getThumbnailPath());
+        }
+    };
+
     private Context context;
-    private List<Product> cartList;
-    private DatabaseHelper dbHelper;
+    // حساب الفروق في الخلفية، والأسطر لا تُعدّل في مكانها بل تُستبدل بنسخ جديدة
+    private final AsyncListDiffer<CartItem> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private List<CartItem> cartList; // آخر قائمة أُرسلت للـ differ
+    private ProductRepository repository;
+    private final ImageLoader imageLoader;
+    private final int imageWidthPx, imageHeightPx;
 
     public interface OnCartChangeListener {
         void onCartChanged();
@@ -37,23 +64,44 @@ public class CartAdapter extends RecyclerView.Adapter<CartAdapter.CartViewHolder
         this.cartChangeListener = listener;
     }
 
-    // Constructor مع قاعدة البيانات
-    public CartAdapter(Context context, List<Product> cartList, DatabaseHelper dbHelper) {
+    // Constructor مع مستودع البيانات
+    public CartAdapter(Context context, List<CartItem> cartList, ProductRepository repository) {
         this.context = context;
-        this.cartList = cartList;
-        this.dbHelper = dbHelper;
+        this.repository = repository;
+        this.imageLoader = ImageLoader.getInstance(context);
+        // صورة السلة 80dp × 80dp
+        this.imageWidthPx = (int) (80 * context.getResources().getDisplayMetrics().density);
+        this.imageHeightPx = imageWidthPx;
+        setHasStableIds(true);
+        setItems(cartList);
     }
 
     // Constructor بدون قاعدة البيانات (احتياطي)
-    public CartAdapter(Context context, List<Product> cartList) {
+    public CartAdapter(Context context, List<CartItem> cartList) {
         this.context = context;
-        this.cartList = cartList;
-        this.dbHelper = null;
+        this.repository = null;
+        this.imageLoader = ImageLoader.getInstance(context);
+        this.imageWidthPx = (int) (80 * context.getResources().getDisplayMetrics().density);
+        this.imageHeightPx = imageWidthPx;
+        setHasStableIds(true);
+        setItems(cartList);
+    }
+
+    // استبدال محتوى السلة مع الاحتفاظ بنفس الـ adapter وموضع التمرير، وإعادة رسم الأسطر المتغيرة فقط
+    public void setItems(List<CartItem> items) {
+        submitItems(items != null ? new ArrayList<>(items) : new ArrayList<>(), null);
+    }
+
+    private void submitItems(List<CartItem> items, Runnable commitCallback) {
+        cartList = items;
+        differ.submitList(items, commitCallback);
     }
 
     public static class CartViewHolder extends RecyclerView.ViewHolder {
         ImageView productImage;
         TextView name, price;
+        TextView quantity, lineTotal;
+        TextView decreaseButton, increaseButton; // التحكم بالكمية
         ImageButton removeButton; // زر الحذف من السلة
 
         public CartViewHolder(@NonNull View itemView) {
@@ -61,6 +109,10 @@ public class CartAdapter extends RecyclerView.Adapter<CartAdapter.CartViewHolder
             productImage = itemView.findViewById(R.id.cartItemImage);
             name = itemView.findViewById(R.id.cartItemName);
             price = itemView.findViewById(R.id.cartItemPrice);
+            quantity = itemView.findViewById(R.id.cartItemQuantity);
+            lineTotal = itemView.findViewById(R.id.cartItemLineTotal);
+            decreaseButton = itemView.findViewById(R.id.cartItemDecreaseButton);
+            increaseButton = itemView.findViewById(R.id.cartItemIncreaseButton);
             removeButton = itemView.findViewById(R.id.removeFromCartButton);
         }
     }
@@ -74,49 +126,77 @@ public class CartAdapter extends RecyclerView.Adapter<CartAdapter.CartViewHolder
 
     @Override
     public void onBindViewHolder(@NonNull CartViewHolder holder, int position) {
-        Product product = cartList.get(position);
+        CartItem item = differ.getCurrentList().get(position);
+        Product product = item.getProduct();
 
         // تحميل الصورة
         loadProductImage(holder.productImage, product);
 
         holder.name.setText(product.getName());
         holder.price.setText(String.format("%.2f ريال", product.getPrice()));
+        holder.quantity.setText(String.valueOf(item.getQuantity()));
+        holder.lineTotal.setText(String.format("%.2f ريال", item.getLineTotal()));
+
+        // تعديل الكمية في نفس السطر
+        holder.decreaseButton.setOnClickListener(v -> changeQuantity(item, item.getQuantity() - 1));
+        holder.increaseButton.setOnClickListener(v -> changeQuantity(item, item.getQuantity() + 1));
 
         // وظيفة زر الحذف من السلة
         if (holder.removeButton != null) {
             holder.removeButton.setOnClickListener(v -> {
-                removeFromCart(product, position);
+                removeFromCart(item);
             });
         }
+    }
 
-        // إشعار المستمع بالتغيير
-        if (cartChangeListener != null) {
-            cartChangeListener.onCartChanged();
+    private void changeQuantity(CartItem item, int newQuantity) {
+        if (newQuantity <= 0) {
+            // الوصول للصفر يعني حذف المنتج من السلة
+            removeFromCart(item);
+            return;
         }
+
+        final int previousQuantity = item.getQuantity();
+        if (repository != null) {
+            // زيادة أو إنقاص ذري في قاعدة البيانات بدلاً من كتابة الكمية المعروضة
+            repository.changeCartQuantity(item, newQuantity - previousQuantity, updated -> {
+                if (!Boolean.TRUE.equals(updated)) {
+                    // التراجع عن التعديل عند الفشل
+                    replaceLine(new CartItem(item.getProduct(), previousQuantity));
+                    Toast.makeText(context, "فشل في تعديل الكمية", Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+
+        // تحديث السطر فوراً بنسخة جديدة (الـ differ يقارن القديم بالجديد)، والحفظ يتم في الخلفية
+        replaceLine(new CartItem(item.getProduct(), newQuantity));
     }
 
-    private void removeFromCart(Product product, int position) {
-        try {
-            if (dbHelper != null) {
-                boolean removed = dbHelper.removeFromCart(product.getId());
-                if (removed) {
-                    cartList.remove(position);
-                    notifyItemRemoved(position);
-                    notifyItemRangeChanged(position, cartList.size());
+    private void replaceLine(CartItem line) {
+        List<CartItem> updated = new ArrayList<>(cartList);
+        int index = updated.indexOf(line); // equals يقارن الـ id الخاص بالمنتج
+        if (index == -1) return;
+        updated.set(index, line);
+        submitItems(updated, null);
+    }
 
-                    Toast.makeText(context, "❌ تم حذف " + product.getName() + " من السلة", Toast.LENGTH_SHORT).show();
+    private void removeFromCart(CartItem item) {
+        Product product = item.getProduct();
+        try {
+            if (repository != null) {
+                repository.removeFromCart(item, removed -> {
+                    if (Boolean.TRUE.equals(removed)) {
+                        // القائمة قد تتغير أثناء الحذف، لذلك نحذف حسب الـ id
+                        removeLine(item);
 
-                    if (cartChangeListener != null) {
-                        cartChangeListener.onCartChanged();
+                        Toast.makeText(context, "❌ تم حذف " + product.getName() + " من السلة", Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(context, "فشل في حذف المنتج", Toast.LENGTH_SHORT).show();
                     }
-                } else {
-                    Toast.makeText(context, "فشل في حذف المنتج", Toast.LENGTH_SHORT).show();
-                }
+                });
             } else {
                 // النظام الاحتياطي
-                cartList.remove(position);
-                notifyItemRemoved(position);
-                notifyItemRangeChanged(position, cartList.size());
+                removeLine(item);
                 Toast.makeText(context, "تم حذف " + product.getName(), Toast.LENGTH_SHORT).show();
             }
         } catch (Exception e) {
@@ -125,18 +205,28 @@ public class CartAdapter extends RecyclerView.Adapter<CartAdapter.CartViewHolder
         }
     }
 
+    // الـ listener يُستدعى بعد تطبيق القائمة الجديدة، فيرى getItemCount المحدث
+    private void removeLine(CartItem item) {
+        List<CartItem> updated = new ArrayList<>(cartList);
+        if (!updated.remove(item)) return;
+        submitItems(updated, () -> {
+            if (cartChangeListener != null) {
+                cartChangeListener.onCartChanged();
+            }
+        });
+    }
+
     private void loadProductImage(ImageView imageView, Product product) {
         try {
-            if (dbHelper != null) {
-                String imagePath = dbHelper.getImagePath(product.getId());
+            // مسار الصورة محمّل مع المنتج، فلا حاجة لاستعلام لكل صف
+            String imagePath = product.getImagePath();
 
-                if (isDefaultImage(imagePath)) {
-                    imageView.setImageResource(product.getImageResId());
-                } else {
-                    loadCustomImage(imageView, imagePath);
-                }
-            } else {
+            if (imagePath == null || isDefaultImage(imagePath)) {
+                imageLoader.cancel(imageView);
                 imageView.setImageResource(product.getImageResId());
+            } else {
+                // الصورة المصغرة تكفي لصف السلة
+                loadCustomImage(imageView, product.getThumbnailPath());
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -153,26 +243,24 @@ public class CartAdapter extends RecyclerView.Adapter<CartAdapter.CartViewHolder
     }
 
     private void loadCustomImage(ImageView imageView, String imagePath) {
-        try {
-            File file = new File(context.getFilesDir(), imagePath);
-            if (file.exists()) {
-                Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
-                if (bitmap != null) {
-                    imageView.setImageBitmap(bitmap);
-                } else {
-                    imageView.setImageResource(R.drawable.ic_launcher_background);
-                }
-            } else {
-                imageView.setImageResource(R.drawable.ic_launcher_background);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            imageView.setImageResource(R.drawable.ic_launcher_background);
-        }
+        // فك الترميز في الخلفية وبحجم الصورة المعروضة فقط
+        imageLoader.load(imagePath, imageView, imageWidthPx, imageHeightPx, R.drawable.ic_launcher_background);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull CartViewHolder holder) {
+        super.onViewRecycled(holder);
+        // إلغاء تحميل الصورة القديمة عند إعادة استخدام الصف
+        imageLoader.cancel(holder.productImage);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getProductId();
     }
 
     @Override
     public int getItemCount() {
-        return cartList.size();
+        return differ.getCurrentList().size();
     }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.example.nutrago.adapters;
+
+import android.content.Context;
+import android.graphics.drawable.GradientDrawable;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.nutrago.models.Category;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Horizontal category bar. Position 0 is "All" (id 0), then the categories in the
+ * order they were loaded. Chips are recycled views, so the bar costs the same with
+ * hundreds of categories as with five. Selecting a category rebinds only the old and
+ * the new chip, and neither selection nor counts go anywhere near the database.
+ */
+public class CategoryAdapter extends RecyclerView.Adapter<CategoryAdapter.CategoryViewHolder> {
+
+    public static final int ALL_CATEGORIES_ID = 0;
+
+    // تحديث جزئي: تغيير اللون فقط أو النص فقط دون إعادة ربط الزر كاملاً
+    private static final Object PAYLOAD_SELECTION = new Object();
+    private static final Object PAYLOAD_COUNT = new Object();
+
+    private static final int COLOR_SELECTED = 0xFF220F84;
+    private static final int COLOR_NORMAL = 0xFFE0E0E0;
+    private static final int TEXT_SELECTED = 0xFFFFFFFF;
+    private static final int TEXT_NORMAL = 0xFF666666;
+
+    // Interface للإبلاغ عن اختيار فئة
+    public interface OnCategorySelectedListener {
+        void onCategorySelected(int categoryId);
+    }
+
+    private final Context context;
+    private final OnCategorySelectedListener listener;
+    // الفئات حسب الموضع، والموضع حسب الـ id
+    private final List<Category> categories = new ArrayList<>();
+    private final Map<Integer, Integer> positionsById = new HashMap<>();
+    private final Map<Integer, Integer> counts = new HashMap<>(); // فئة -> عدد المنتجات
+    private int totalCount = -1; // -1 = الأعداد لم تُحمّل بعد
+    private int selectedCategoryId = ALL_CATEGORIES_ID;
+
+    public CategoryAdapter(Context context, OnCategorySelectedListener listener) {
+        this.context = context;
+        this.listener = listener;
+        setHasStableIds(true);
+        setCategories(new ArrayList<>());
+    }
+
+    // القائمة الكاملة تتغير نادراً (الفئات ثابتة)، لذلك إعادة الربط الكامل هنا مقبولة
+    public void setCategories(List<Category> loaded) {
+        categories.clear();
+        positionsById.clear();
+        categories.add(new Category(ALL_CATEGORIES_ID, "All", null, null));
+        if (loaded != null) {
+            categories.addAll(loaded);
+        }
+        for (int i = 0; i < categories.size(); i++) {
+            positionsById.put(categories.get(i).getId(), i);
+        }
+        notifyDataSetChanged();
+    }
+
+    public void setCounts(Map<Integer, Integer> categoryCounts) {
+        counts.clear();
+        counts.putAll(categoryCounts);
+        totalCount = 0;
+        for (int count : counts.values()) totalCount += count;
+        notifyItemRangeChanged(0, categories.size(), PAYLOAD_COUNT);
+    }
+
+    // إعادة تلوين الزرين المعنيين فقط: السابق والجديد
+    public void setSelectedCategory(int categoryId) {
+        if (categoryId == selectedCategoryId) return;
+        Integer previous = positionsById.get(selectedCategoryId);
+        selectedCategoryId = categoryId;
+        if (previous != null) notifyItemChanged(previous, PAYLOAD_SELECTION);
+        Integer current = positionsById.get(categoryId);
+        if (current != null) notifyItemChanged(current, PAYLOAD_SELECTION);
+    }
+
+    @NonNull
+    @Override
+    public CategoryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        TextView categoryButton = new TextView(context);
+
+        // تصميم الزر
+        categoryButton.setPadding(32, 16, 32, 16);
+        categoryButton.setTextSize(14);
+        categoryButton.setTextAlignment(View.TEXT_ALIGNMENT_CENTER);
+
+        // إعداد المارجن
+        RecyclerView.LayoutParams params = new RecyclerView.LayoutParams(
+                RecyclerView.LayoutParams.WRAP_CONTENT,
+                RecyclerView.LayoutParams.WRAP_CONTENT
+        );
+        params.setMargins(8, 0, 8, 0);
+        categoryButton.setLayoutParams(params);
+
+        CategoryViewHolder holder = new CategoryViewHolder(categoryButton);
+        categoryButton.setOnClickListener(v -> {
+            int position = holder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) return;
+            int categoryId = categories.get(position).getId();
+            setSelectedCategory(categoryId);
+            if (listener != null) {
+                listener.onCategorySelected(categoryId);
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull CategoryViewHolder holder, int position) {
+        Category category = categories.get(position);
+        bindLabel(holder, category);
+        holder.setSelected(category.getId() == selectedCategoryId);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull CategoryViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        Category category = categories.get(position);
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_SELECTION) {
+                holder.setSelected(category.getId() == selectedCategoryId);
+            } else if (payload == PAYLOAD_COUNT) {
+                bindLabel(holder, category);
+            }
+        }
+    }
+
+    // كتابة العدد بجانب اسم الفئة، و"All" تعرض المجموع
+    private void bindLabel(CategoryViewHolder holder, Category category) {
+        Integer count = category.getId() == ALL_CATEGORIES_ID
+                ? (totalCount >= 0 ? Integer.valueOf(totalCount) : null)
+                : counts.get(category.getId());
+        holder.categoryButton.setText(count != null
+                ? category.getName() + " (" + count + ")"
+                : category.getName());
+    }
+
+    @Override
+    public int getItemCount() {
+        return categories.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return categories.get(position).getId();
+    }
+
+    static class CategoryViewHolder extends RecyclerView.ViewHolder {
+        final TextView categoryButton;
+        // الخلفيتان تُنشآن مرة واحدة لكل زر، والاختيار يبدّل بينهما فقط
+        private final GradientDrawable selectedBackground = createRoundedBackground(COLOR_SELECTED);
+        private final GradientDrawable normalBackground = createRoundedBackground(COLOR_NORMAL);
+
+        CategoryViewHolder(@NonNull TextView itemView) {
+            super(itemView);
+            categoryButton = itemView;
+        }
+
+        void setSelected(boolean isSelected) {
+            if (isSelected) {
+                // نمط الفئة المختارة
+                categoryButton.setBackground(selectedBackground);
+                categoryButton.setTextColor(TEXT_SELECTED);
+                categoryButton.setElevation(4f);
+            } else {
+                // نمط الفئة العادية
+                categoryButton.setBackground(normalBackground);
+                categoryButton.setTextColor(TEXT_NORMAL);
+                categoryButton.setElevation(2f);
+            }
+        }
+
+        // الزوايا المدورة
+        private static GradientDrawable createRoundedBackground(int color) {
+            GradientDrawable drawable = new GradientDrawable();
+            drawable.setCornerRadius(20f);
+            drawable.setColor(color);
+            return drawable;
+        }
+    }
+}
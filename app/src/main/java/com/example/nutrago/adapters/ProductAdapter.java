@@ -2,8 +2,6 @@ package com.example.nutrago.adapters;
 
 import android.app.AlertDialog;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,22 +12,52 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.nutrago.MainActivity;
 import com.example.nutrago.R;
-import com.example.nutrago.database.DatabaseHelper;
+import com.example.nutrago.images.ImageLoader;
 import com.example.nutrago.models.Product;
 import com.example.nutrago.dialogs.EditProductDialog;
+import com.example.nutrago.repository.ProductRepository;
 import com.example.nutrago.ui.details.ProductDetailsFragment;
 
-import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductViewHolder> {
 
+    // نفس المنتج = نفس الـ id، والمحتوى يُقارن بما يظهر في الكارت فقط
+    private static final DiffUtil.ItemCallback<Product> DIFF_CALLBACK = new DiffUtil.ItemCallback<Product>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Product oldItem, @NonNull Product newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Product oldItem, @NonNull Product newItem) {
+            return Objects.equals(oldItem.getName(), newItem.getName())
+                    && Objects.equals(oldItem.getDescription(), newItem.getDescription())
+                    && oldItem.isDescriptionTruncated() == newItem.isDescriptionTruncated()
+                    && oldItem.getPrice() == newItem.getPrice()
+                    && oldItem.getImageResId() == newItem.getImageResId()
+                    && Objects.equals(oldItem.getImagePath(), newItem.getImagePath())
+                    && Objects.equals(oldItem.getListImagePath(), newItem.getListImagePath())
+                    && oldItem.getCategoryId() == newItem.getCategoryId();
+        }
+    };
+
     private Context context;
+    // حساب الفروق بين القوائم يتم في الخلفية، ثم تُحدّث الصفوف المتغيرة فقط
+    private final AsyncListDiffer<Product> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    // آخر قائمة أُرسلت للـ differ (قد تسبق المعروضة حتى ينتهي الحساب)، لا تُعدّل بعد الإرسال
     private List<Product> productList;
-    private DatabaseHelper dbHelper;
+    private ProductRepository repository;
+    private final ImageLoader imageLoader;
+    private final int imageWidthPx, imageHeightPx;
 
     // Interface للإبلاغ عن حذف المنتج
     public interface OnProductDeletedListener {
@@ -52,11 +80,16 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
         this.editListener = listener;
     }
 
-    // Constructor يقبل قاعدة البيانات
-    public ProductAdapter(Context context, List<Product> productList, DatabaseHelper dbHelper) {
+    // Constructor يقبل مستودع البيانات
+    public ProductAdapter(Context context, List<Product> productList, ProductRepository repository) {
         this.context = context;
-        this.productList = productList;
-        this.dbHelper = dbHelper;
+        this.repository = repository;
+        setHasStableIds(true);
+        submitList(productList, null);
+        this.imageLoader = ImageLoader.getInstance(context);
+        // الصورة في الكارت بعرض الشاشة وارتفاع 180dp
+        this.imageWidthPx = context.getResources().getDisplayMetrics().widthPixels;
+        this.imageHeightPx = (int) (180 * context.getResources().getDisplayMetrics().density);
     }
 
     public static class ProductViewHolder extends RecyclerView.ViewHolder {
@@ -87,19 +120,23 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
 
     @Override
     public void onBindViewHolder(@NonNull ProductViewHolder holder, int position) {
-        Product p = productList.get(position);
+        Product p = differ.getCurrentList().get(position);
 
         // تحميل الصورة (افتراضية أو مخصصة)
         loadProductImage(holder.productImage, p);
 
         holder.name.setText(p.getName());
-        holder.description.setText(p.getDescription());
+        // الوصف في القائمة مختصر، والنص الكامل يظهر في صفحة التفاصيل
+        holder.description.setText(p.isDescriptionTruncated() ? p.getDescription() + "…" : p.getDescription());
         holder.price.setText(String.format("%.2f SAR", p.getPrice()));
 
         // إضافة وظيفة الانتقال لصفحة التفاصيل عند الضغط على الكارت
         holder.itemView.setOnClickListener(v -> {
             try {
-                if (context instanceof androidx.fragment.app.FragmentActivity) {
+                if (context instanceof MainActivity) {
+                    // فتح التفاصيل فوق التبويب الحالي مع إبقائه حياً، فالرجوع يعيد القائمة كما هي
+                    ((MainActivity) context).openOverCurrentTab(ProductDetailsFragment.newInstance(p.getId()));
+                } else if (context instanceof androidx.fragment.app.FragmentActivity) {
                     androidx.fragment.app.FragmentActivity activity = (androidx.fragment.app.FragmentActivity) context;
 
                     // إنشاء fragment جديد لتفاصيل المنتج
@@ -120,50 +157,60 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
 
         // وظيفة زر إضافة للسلة المحسنة
         holder.addButton.setOnClickListener(v -> {
-            try {
-                if (dbHelper != null) {
-                    boolean success = dbHelper.addToCart(p.getId());
-                    if (success) {
-                        // تأثير بصري على الزر
-                        holder.addButton.setText("✓ Added!");
-                        holder.addButton.setBackgroundColor(0xFF4CAF50); // أخضر
-
-                        // إعادة النص بعد ثانيتين
-                        holder.addButton.postDelayed(() -> {
-                            holder.addButton.setText("Add to Cart");
-                            holder.addButton.setBackgroundColor(0xFF009688); // اللون الأصلي
-                        }, 2000);
-
-                        Toast.makeText(context, "✅ " + p.getName() + " تم إضافته للسلة", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(context, "❌ فشل في إضافة المنتج للسلة", Toast.LENGTH_SHORT).show();
-                    }
+            if (repository == null) {
+                Toast.makeText(context, "⚠️ قاعدة البيانات غير متاحة", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            repository.addToCart(p, success -> {
+                if (Boolean.TRUE.equals(success)) {
+                    // تأثير بصري على الزر
+                    holder.addButton.setText("✓ Added!");
+                    holder.addButton.setBackgroundColor(0xFF4CAF50); // أخضر
+
+                    // إعادة النص بعد ثانيتين
+                    holder.addButton.postDelayed(() -> {
+                        holder.addButton.setText("Add to Cart");
+                        holder.addButton.setBackgroundColor(0xFF009688); // اللون الأصلي
+                    }, 2000);
+
+                    Toast.makeText(context, "✅ " + p.getName() + " تم إضافته للسلة", Toast.LENGTH_SHORT).show();
                 } else {
-                    Toast.makeText(context, "⚠️ قاعدة البيانات غير متاحة", Toast.LENGTH_SHORT).show();
+                    Toast.makeText(context, "❌ فشل في إضافة المنتج للسلة", Toast.LENGTH_SHORT).show();
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                Toast.makeText(context, "❌ خطأ في إضافة المنتج", Toast.LENGTH_SHORT).show();
-            }
+            });
         });
 
         // وظيفة زر التعديل الجديدة
         holder.editButton.setOnClickListener(v -> {
-            showEditProductDialog(p, position);
+            showEditProductDialog(p);
         });
 
         // وظيفة زر الحذف
         holder.deleteButton.setOnClickListener(v -> {
-            showDeleteConfirmationDialog(p, position);
+            showDeleteConfirmationDialog(p);
         });
     }
 
-    private void showEditProductDialog(Product product, int position) {
+    private void showEditProductDialog(Product product) {
+        if (product.isDescriptionTruncated()) {
+            // صف القائمة يحمل بداية الوصف فقط، نقرأ المنتج كاملاً حتى لا يُحفظ وصف مقطوع
+            repository.getProductDetail(product.getId(), detail -> {
+                if (detail == null) {
+                    Toast.makeText(context, "خطأ في تحميل المنتج", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                openEditProductDialog(detail.getProduct());
+            });
+        } else {
+            openEditProductDialog(product);
+        }
+    }
+
+    private void openEditProductDialog(Product product) {
         EditProductDialog dialog = new EditProductDialog(product);
         dialog.setOnProductEditedListener(updatedProduct -> {
-            // تحديث المنتج في القائمة المحلية
-            productList.set(position, updatedProduct);
-            notifyItemChanged(position);
+            // تحديث المنتج في القائمة المحلية (يُعاد رسم صفه فقط)
+            replaceProduct(updatedProduct);
 
             Toast.makeText(context, "تم تحديث " + updatedProduct.getName() + " بنجاح", Toast.LENGTH_SHORT).show();
 
@@ -179,55 +226,51 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
         }
     }
 
-    private void showDeleteConfirmationDialog(Product product, int position) {
+    private void showDeleteConfirmationDialog(Product product) {
         new AlertDialog.Builder(context)
                 .setTitle("حذف المنتج")
                 .setMessage("هل أنت متأكد من حذف \"" + product.getName() + "\"؟")
                 .setPositiveButton("حذف", (dialog, which) -> {
-                    deleteProduct(product, position);
+                    deleteProduct(product);
                 })
                 .setNegativeButton("إلغاء", null)
                 .setIcon(R.drawable.ic_delete)
                 .show();
     }
 
-    private void deleteProduct(Product product, int position) {
-        if (dbHelper != null) {
-            boolean deleted = dbHelper.deleteProduct(product.getId());
-
-            if (deleted) {
-                productList.remove(position);
-                notifyItemRemoved(position);
-                notifyItemRangeChanged(position, productList.size());
+    private void deleteProduct(Product product) {
+        if (repository != null) {
+            repository.deleteProduct(product.getId(), deleted -> {
+                if (Boolean.TRUE.equals(deleted)) {
+                    // القائمة قد تتغير أثناء الحذف، لذلك نحذف حسب الـ id
+                    removeProduct(product);
 
-                Toast.makeText(context, "تم حذف " + product.getName() + " بنجاح", Toast.LENGTH_SHORT).show();
+                    Toast.makeText(context, "تم حذف " + product.getName() + " بنجاح", Toast.LENGTH_SHORT).show();
 
-                if (deleteListener != null) {
-                    deleteListener.onProductDeleted();
+                    if (deleteListener != null) {
+                        deleteListener.onProductDeleted();
+                    }
+                } else {
+                    Toast.makeText(context, "فشل في حذف المنتج", Toast.LENGTH_SHORT).show();
                 }
-            } else {
-                Toast.makeText(context, "فشل في حذف المنتج", Toast.LENGTH_SHORT).show();
-            }
+            });
         } else {
-            productList.remove(position);
-            notifyItemRemoved(position);
-            notifyItemRangeChanged(position, productList.size());
+            removeProduct(product);
             Toast.makeText(context, "تم حذف " + product.getName(), Toast.LENGTH_SHORT).show();
         }
     }
 
     private void loadProductImage(ImageView imageView, Product product) {
         try {
-            if (dbHelper != null) {
-                String imagePath = dbHelper.getImagePath(product.getId());
+            // مسار الصورة محمّل مع المنتج، فلا حاجة لاستعلام لكل صف
+            String imagePath = product.getImagePath();
 
-                if (isDefaultImage(imagePath)) {
-                    imageView.setImageResource(product.getImageResId());
-                } else {
-                    loadCustomImage(imageView, imagePath);
-                }
-            } else {
+            if (imagePath == null || isDefaultImage(imagePath)) {
+                imageLoader.cancel(imageView);
                 imageView.setImageResource(product.getImageResId());
+            } else {
+                // أصغر نسخة مخزنة تكفي لكارت المعرض
+                loadCustomImage(imageView, product.getListImagePath());
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -244,26 +287,49 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
     }
 
     private void loadCustomImage(ImageView imageView, String imagePath) {
-        try {
-            File file = new File(context.getFilesDir(), imagePath);
-            if (file.exists()) {
-                Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
-                if (bitmap != null) {
-                    imageView.setImageBitmap(bitmap);
-                } else {
-                    imageView.setImageResource(R.drawable.ic_launcher_background);
-                }
-            } else {
-                imageView.setImageResource(R.drawable.ic_launcher_background);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            imageView.setImageResource(R.drawable.ic_launcher_background);
+        // فك الترميز في الخلفية وبحجم الصورة المعروضة فقط
+        imageLoader.load(imagePath, imageView, imageWidthPx, imageHeightPx, R.drawable.ic_launcher_background);
+    }
+
+    /**
+     * يستبدل القائمة المعروضة. الفروق تُحسب في الخلفية، فإعادة التحميل بعد تعديل منتج
+     * واحد تعيد رسم صفه فقط مع الاحتفاظ بموضع التمرير.
+     * commitCallback (اختياري) يُستدعى بعد تطبيق القائمة الجديدة.
+     */
+    public void submitList(List<Product> products, Runnable commitCallback) {
+        productList = products != null ? new ArrayList<>(products) : new ArrayList<>();
+        differ.submitList(productList, commitCallback);
+    }
+
+    private void replaceProduct(Product updatedProduct) {
+        List<Product> updated = new ArrayList<>(productList);
+        int index = updated.indexOf(updatedProduct); // equals يقارن الـ id
+        if (index == -1) return;
+        updated.set(index, updatedProduct);
+        submitList(updated, null);
+    }
+
+    private void removeProduct(Product product) {
+        List<Product> updated = new ArrayList<>(productList);
+        if (updated.remove(product)) {
+            submitList(updated, null);
         }
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ProductViewHolder holder) {
+        super.onViewRecycled(holder);
+        // إلغاء تحميل الصورة القديمة عند إعادة استخدام الصف
+        imageLoader.cancel(holder.productImage);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
+    }
+
     @Override
     public int getItemCount() {
-        return productList.size();
+        return differ.getCurrentList().size();
     }
 }
\ No newline at end of file
@@ -0,0 +1,299 @@
+package com.example.nutrago.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bulk product import from a CSV or JSON catalog file.
+ * The file is read as a stream, one record at a time, so memory stays flat however
+ * large the catalog is. Rows go through one compiled INSERT and are committed in
+ * batches of {@link #BATCH_SIZE} per transaction. Category names are resolved against
+ * a map read once up front; rows naming an unknown category are rejected, since the
+ * categories are fixed.
+ *
+ * CSV: a header row naming the columns (name, description, price, category, image),
+ * then one product per record, read by {@link CsvRecordReader}.
+ * JSON: an array of objects with the same keys.
+ *
+ * A failure part-way keeps the batches already committed and rolls back the open one.
+ * Call from a background thread.
+ */
+public class CatalogImporter {
+
+    private static final String TAG = "CatalogImporter";
+
+    public static final int BATCH_SIZE = 500;
+    private static final int MAX_REPORTED_REJECTIONS = 100;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024; // a runaway quote shouldn't eat the heap
+    private static final String DEFAULT_IMAGE = "protein_bar";
+
+    public interface ProgressListener {
+        // Called after each committed batch
+        void onProgress(int imported, int rejected);
+    }
+
+    public static class Result {
+        private final int imported;
+        private final int rejected;
+        private final List<String> rejectedLines;
+        private final long elapsedMs;
+
+        Result(int imported, int rejected, List<String> rejectedLines, long elapsedMs) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.rejectedLines = rejectedLines;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getRejected() {
+            return rejected;
+        }
+
+        // The first rejections as "line N: reason", capped at 100
+        public List<String> getRejectedLines() {
+            return rejectedLines;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public long getRowsPerSecond() {
+            return elapsedMs == 0 ? imported : imported * 1000L / elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{imported=" + imported + ", rejected=" + rejected
+                    + ", elapsedMs=" + elapsedMs + ", rowsPerSecond=" + getRowsPerSecond() + '}';
+        }
+    }
+
+    private final DatabaseHelper dbHelper;
+
+    // State of one import run
+    private SQLiteDatabase db;
+    private SQLiteStatement insert;
+    private Map<String, Integer> categoryIds;
+    private ProgressListener listener;
+    private int imported;
+    private int rejected;
+    private int inBatch;
+    private List<String> rejectedLines;
+
+    public CatalogImporter(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    public Result importCsv(Reader source, ProgressListener progressListener) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        begin(progressListener);
+        try {
+            CsvRecordReader reader = new CsvRecordReader(new BufferedReader(source), MAX_RECORD_LENGTH);
+            List<String> header = reader.readRecord();
+            if (header == null) {
+                throw new IOException("Empty catalog file");
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            if (!columns.containsKey("name") || !columns.containsKey("price")) {
+                throw new IOException("CSV header must name at least the name and price columns");
+            }
+
+            while (true) {
+                List<String> record;
+                try {
+                    record = reader.readRecord();
+                } catch (CsvRecordReader.MalformedRecordException e) {
+                    // The reader has already skipped to the next record
+                    reject(reader.getRecordLine(), e.getMessage());
+                    continue;
+                }
+                if (record == null) break;
+                if (record.size() == 1 && record.get(0).trim().isEmpty()) continue; // blank line
+
+                insertRow(reader.getRecordLine(),
+                        field(record, columns, "name"),
+                        field(record, columns, "description"),
+                        field(record, columns, "price"),
+                        field(record, columns, "category"),
+                        field(record, columns, "image"));
+            }
+            return finish(start);
+        } finally {
+            end();
+        }
+    }
+
+    public Result importJson(Reader source, ProgressListener progressListener) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        begin(progressListener);
+        try {
+            JsonReader reader = new JsonReader(source);
+            reader.beginArray();
+            int index = 0;
+            while (reader.hasNext()) {
+                index++;
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    reject(index, "not an object");
+                    continue;
+                }
+                String name = null, description = null, price = null, category = null, image = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        continue;
+                    }
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY || reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    // nextString also reads numbers, as their literal text
+                    String value = reader.peek() == JsonToken.BOOLEAN
+                            ? String.valueOf(reader.nextBoolean())
+                            : reader.nextString();
+                    switch (key) {
+                        case "name": name = value; break;
+                        case "description": description = value; break;
+                        case "price": price = value; break;
+                        case "category": category = value; break;
+                        case "image": image = value; break;
+                        default: break;
+                    }
+                }
+                reader.endObject();
+                insertRow(index, name, description, price, category, image);
+            }
+            reader.endArray();
+            return finish(start);
+        } finally {
+            end();
+        }
+    }
+
+    private void begin(ProgressListener progressListener) {
+        listener = progressListener;
+        imported = 0;
+        rejected = 0;
+        inBatch = 0;
+        rejectedLines = new ArrayList<>();
+        categoryIds = dbHelper.getCategoryIdsByName();
+        db = dbHelper.getWritableDatabase();
+        insert = dbHelper.compileProductInsert(db);
+        db.beginTransaction();
+    }
+
+    private Result finish(long start) {
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        reportProgress();
+        Result result = new Result(imported, rejected, rejectedLines, SystemClock.elapsedRealtime() - start);
+        Log.i(TAG, "catalog import finished: " + result);
+        return result;
+    }
+
+    // Rolls back the open batch if the import stopped on an error
+    private void end() {
+        if (db != null && db.inTransaction()) {
+            db.endTransaction();
+        }
+        if (insert != null) {
+            insert.close();
+        }
+        insert = null;
+        db = null;
+        listener = null;
+    }
+
+    private void insertRow(int line, String name, String description, String priceText,
+                           String categoryName, String image) {
+        if (name == null || name.trim().isEmpty()) {
+            reject(line, "missing name");
+            return;
+        }
+        double price;
+        try {
+            price = Double.parseDouble(priceText == null ? "" : priceText.trim());
+        } catch (NumberFormatException e) {
+            reject(line, "bad price \"" + priceText + "\"");
+            return;
+        }
+        if (price < 0 || Double.isNaN(price) || Double.isInfinite(price)) {
+            reject(line, "bad price \"" + priceText + "\"");
+            return;
+        }
+        Integer categoryId = 1; // same default as addProduct
+        if (categoryName != null && !categoryName.trim().isEmpty()) {
+            categoryId = categoryIds.get(categoryName.trim().toLowerCase(Locale.ROOT));
+            if (categoryId == null) {
+                reject(line, "unknown category \"" + categoryName + "\"");
+                return;
+            }
+        }
+
+        insert.clearBindings();
+        insert.bindString(1, name.trim());
+        if (description == null) {
+            insert.bindNull(2);
+        } else {
+            insert.bindString(2, description.trim());
+        }
+        insert.bindDouble(3, price);
+        insert.bindString(4, image == null || image.trim().isEmpty() ? DEFAULT_IMAGE : image.trim());
+        insert.bindLong(5, categoryId);
+        if (insert.executeInsert() == -1) {
+            reject(line, "insert failed");
+            return;
+        }
+        imported++;
+
+        if (++inBatch >= BATCH_SIZE) {
+            // Commit this batch and open the next one
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            reportProgress();
+            inBatch = 0;
+            db.beginTransaction();
+        }
+    }
+
+    private void reject(int line, String reason) {
+        rejected++;
+        if (rejectedLines.size() < MAX_REPORTED_REJECTIONS) {
+            rejectedLines.add("line " + line + ": " + reason);
+        }
+    }
+
+    private void reportProgress() {
+        if (listener != null) {
+            listener.onProgress(imported, rejected);
+        }
+    }
+
+    private static String field(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        return index == null || index >= record.size() ? null : record.get(index);
+    }
+}
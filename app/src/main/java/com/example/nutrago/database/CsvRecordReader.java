@@ -0,0 +1,106 @@
+package com.example.nutrago.database;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV records from a stream one at a time. Quoted fields may contain commas,
+ * "" and line breaks; a quote inside an unquoted field is kept as a plain character.
+ *
+ * A bad record (too long, text after a closing quote, a quote left open at the end of
+ * the input) is still read to its end before {@link MalformedRecordException} is
+ * thrown, so the next call starts at the next record and never in the middle of the
+ * bad one. Past the length limit the record's text is no longer kept.
+ */
+class CsvRecordReader {
+
+    static class MalformedRecordException extends IOException {
+        MalformedRecordException(String reason) {
+            super(reason);
+        }
+    }
+
+    private final BufferedReader reader;
+    private final int maxRecordLength;
+    private int lineNumber;
+    private int recordLine;
+
+    CsvRecordReader(BufferedReader reader, int maxRecordLength) {
+        this.reader = reader;
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    // Line the last record started on (1-based)
+    int getRecordLine() {
+        return recordLine;
+    }
+
+    // Fields of the next record, or null at the end of the input
+    List<String> readRecord() throws IOException {
+        String line = reader.readLine();
+        if (line == null) return null;
+        lineNumber++;
+        recordLine = lineNumber;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean afterQuote = false; // a quoted field just closed; only a comma may follow
+        String problem = null;
+        int length = 0;
+        while (true) {
+            length += line.length();
+            if (problem == null && length > maxRecordLength) {
+                problem = "record longer than " + maxRecordLength + " characters";
+            }
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                            afterQuote = true;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    afterQuote = false;
+                } else if (afterQuote) {
+                    if (problem == null) problem = "text after a closing quote";
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else {
+                    field.append(c);
+                }
+            }
+            if (problem != null) {
+                // Keep following the quotes to find the record's end, but drop its text
+                fields.clear();
+                field.setLength(0);
+            }
+            if (!quoted) break;
+
+            // Quoted field continues on the next line
+            line = reader.readLine();
+            if (line == null) {
+                if (problem == null) problem = "quoted field not closed before the end of the file";
+                break;
+            }
+            lineNumber++;
+            field.append('\n');
+        }
+        if (problem != null) {
+            throw new MalformedRecordException(problem);
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -5,16 +5,36 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.example.nutrago.models.CartItem;
+import com.example.nutrago.models.CartSummary;
 import com.example.nutrago.models.Product;
+import com.example.nutrago.models.ProductDetail;
+import com.example.nutrago.models.ProductImage;
 import com.example.nutrago.models.Category;
+import com.example.nutrago.models.CategorySummary;
 import com.example.nutrago.R;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
+    private static final String TAG = "DatabaseHelper";
     private static final String DATABASE_NAME = "nutrago.db";
-    private static final int DATABASE_VERSION = 2; // Increased version for migration
+    private static final int DATABASE_VERSION = 5; // v5: full-text search index
 
     // Products table
     private static final String TABLE_PRODUCTS = "products";
@@ -23,6 +43,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_DESCRIPTION = "description";
     private static final String COLUMN_PRICE = "price";
     private static final String COLUMN_IMAGE_PATH = "image_path";
+    // Smaller copies of the image made at import time (NULL = use image_path)
+    private static final String COLUMN_IMAGE_DETAIL_PATH = "image_detail_path";
+    private static final String COLUMN_IMAGE_LIST_PATH = "image_list_path";
+    private static final String COLUMN_IMAGE_THUMBNAIL_PATH = "image_thumbnail_path";
     private static final String COLUMN_CATEGORY_ID = "category_id"; // Foreign key
 
     // Categories table
@@ -36,11 +60,139 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_PRODUCT_ID = "product_id";
     private static final String COLUMN_QUANTITY = "quantity";
 
+    // Indexes (schema v3)
+    public static final String INDEX_PRODUCTS_CATEGORY = "idx_products_category_id";
+    public static final String INDEX_CART_PRODUCT = "idx_cart_product_id";
+
+    // Full-text index over product name and description (schema v5), an FTS4
+    // external-content table kept in sync with products by triggers
+    public static final String TABLE_PRODUCTS_FTS = "products_fts";
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    // Ranking weight of a hit in each FTS column (name, description)
+    private static final double[] SEARCH_COLUMN_WEIGHTS = {3.0, 1.0};
+
+    // List rows carry only the start of the description (the card shows two lines); the
+    // full text is read by the details screen. One extra character tells whether it was cut.
+    public static final int LIST_DESCRIPTION_LENGTH = 160;
+    private static final String LIST_COLUMNS = COLUMN_ID + ", " + COLUMN_NAME + ", "
+            + "substr(" + COLUMN_DESCRIPTION + ", 1, " + (LIST_DESCRIPTION_LENGTH + 1) + ") AS " + COLUMN_DESCRIPTION + ", "
+            + COLUMN_PRICE + ", " + COLUMN_IMAGE_PATH + ", " + COLUMN_IMAGE_LIST_PATH + ", "
+            + COLUMN_IMAGE_THUMBNAIL_PATH + ", " + COLUMN_CATEGORY_ID;
+
+    // The hot queries below are package-private so DatabaseHelperQueryPlanTest can explain
+    // exactly the SQL that runs.
+
+    // All products after the (category_id, id) key. Split into "rest of the current category"
+    // + "later categories" so each half is an index seek; an OR of the two would scan from the start.
+    // Binds: afterCategoryId, afterId, limit, afterCategoryId, limit, limit
+    static final String PRODUCTS_PAGE_QUERY = "SELECT * FROM ("
+            + "SELECT " + LIST_COLUMNS + " FROM " + TABLE_PRODUCTS
+            + " WHERE " + COLUMN_CATEGORY_ID + " = ? AND " + COLUMN_ID + " > ?"
+            + " ORDER BY " + COLUMN_ID + " LIMIT ?)"
+            + " UNION ALL SELECT * FROM ("
+            + "SELECT " + LIST_COLUMNS + " FROM " + TABLE_PRODUCTS
+            + " WHERE " + COLUMN_CATEGORY_ID + " > ?"
+            + " ORDER BY " + COLUMN_CATEGORY_ID + ", " + COLUMN_ID + " LIMIT ?)"
+            + " ORDER BY " + COLUMN_CATEGORY_ID + ", " + COLUMN_ID + " LIMIT ?";
+
+    // One category after the id key. Binds: categoryId, afterId, limit
+    static final String CATEGORY_PAGE_QUERY = "SELECT " + LIST_COLUMNS + " FROM " + TABLE_PRODUCTS
+            + " WHERE " + COLUMN_CATEGORY_ID + " = ? AND " + COLUMN_ID + " > ?"
+            + " ORDER BY " + COLUMN_ID + " LIMIT ?";
+
+    static final String LIST_ROW_QUERY = "SELECT " + LIST_COLUMNS + " FROM " + TABLE_PRODUCTS
+            + " WHERE " + COLUMN_ID + " = ?";
+
+    // Binds: delta, productId. SQLite on API 24 has no ON CONFLICT DO UPDATE, so the existing
+    // row is joined in and replaced under the same id.
+    static final String CART_ADD_SQL = "INSERT OR REPLACE INTO " + TABLE_CART
+            + "(" + COLUMN_ID + ", " + COLUMN_PRODUCT_ID + ", " + COLUMN_QUANTITY + ")"
+            + " SELECT c." + COLUMN_ID + ", k.pid, COALESCE(c." + COLUMN_QUANTITY + ", 0) + ?"
+            + " FROM (SELECT ? AS pid) k"
+            + " LEFT JOIN " + TABLE_CART + " c ON c." + COLUMN_PRODUCT_ID + " = k.pid";
+
+    // Binds: delta, productId, delta
+    static final String CART_DECREMENT_SQL = "UPDATE " + TABLE_CART
+            + " SET " + COLUMN_QUANTITY + " = " + COLUMN_QUANTITY + " + ?"
+            + " WHERE " + COLUMN_PRODUCT_ID + " = ? AND " + COLUMN_QUANTITY + " + ? > 0";
+
+    // Binds: quantity, productId
+    static final String CART_SET_QUANTITY_SQL = "UPDATE " + TABLE_CART
+            + " SET " + COLUMN_QUANTITY + " = ? WHERE " + COLUMN_PRODUCT_ID + " = ?";
+
+    static final String CART_DELETE_SQL = "DELETE FROM " + TABLE_CART
+            + " WHERE " + COLUMN_PRODUCT_ID + " = ?";
+
+    static final String CART_SUMMARY_QUERY = "SELECT SUM(p." + COLUMN_PRICE + " * c." + COLUMN_QUANTITY + ")"
+            + ", SUM(c." + COLUMN_QUANTITY + ")"
+            + " FROM " + TABLE_CART + " c INNER JOIN " + TABLE_PRODUCTS + " p"
+            + " ON p." + COLUMN_ID + " = c." + COLUMN_PRODUCT_ID;
+
+    // Cart lines with just what a cart row draws, in the order they were first added
+    static final String CART_ITEMS_QUERY = "SELECT p." + COLUMN_ID + ", p." + COLUMN_NAME + ", p." + COLUMN_PRICE
+            + ", p." + COLUMN_IMAGE_PATH + ", p." + COLUMN_IMAGE_THUMBNAIL_PATH + ", p." + COLUMN_CATEGORY_ID
+            + ", c." + COLUMN_QUANTITY
+            + " FROM " + TABLE_CART + " c INNER JOIN " + TABLE_PRODUCTS + " p ON p." + COLUMN_ID + " = c." + COLUMN_PRODUCT_ID
+            + " ORDER BY c." + COLUMN_ID;
+
+    static final String CART_QUANTITY_QUERY = "SELECT " + COLUMN_QUANTITY + " FROM " + TABLE_CART
+            + " WHERE " + COLUMN_PRODUCT_ID + " = ?";
+
+    private static volatile DatabaseHelper instance;
+
+    // Cart writes, compiled on first use and reused (guarded by cartStatementLock)
+    private final Object cartStatementLock = new Object();
+    private SQLiteStatement cartAddStatement;
+    private SQLiteStatement cartDecrementStatement;
+    private SQLiteStatement cartSetQuantityStatement;
+    private SQLiteStatement cartDeleteStatement;
+
     private Context context;
 
+    /**
+     * The one helper for the whole process. Every SQLiteOpenHelper keeps its own
+     * connection, so sharing it means the database is opened and its schema checked once.
+     */
+    public static DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            synchronized (DatabaseHelper.class) {
+                if (instance == null) {
+                    instance = new DatabaseHelper(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
     public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    // Lets tests open a throwaway database file instead of the real one
+    @VisibleForTesting
+    public DatabaseHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
         this.context = context;
+        // Write-ahead logging: readers see the last commit instead of waiting for a writer
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Opens the database (running onCreate/onUpgrade if needed) and touches the tables
+     * the first screens read, so the first real query doesn't pay for it.
+     * Call from a background thread.
+     */
+    public void warmUp() {
+        try {
+            long start = SystemClock.elapsedRealtime();
+            SQLiteDatabase db = this.getWritableDatabase();
+            db.rawQuery("SELECT COUNT(*) FROM " + TABLE_CATEGORIES, null).close();
+            db.rawQuery("SELECT COUNT(*) FROM " + TABLE_PRODUCTS, null).close();
+            db.rawQuery("SELECT COUNT(*) FROM " + TABLE_CART, null).close();
+            Log.i(TAG, "database warm-up took " + (SystemClock.elapsedRealtime() - start) + " ms");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     @Override
@@ -62,6 +214,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     + COLUMN_DESCRIPTION + " TEXT,"
                     + COLUMN_PRICE + " REAL NOT NULL,"
                     + COLUMN_IMAGE_PATH + " TEXT,"
+                    + COLUMN_IMAGE_DETAIL_PATH + " TEXT,"
+                    + COLUMN_IMAGE_LIST_PATH + " TEXT,"
+                    + COLUMN_IMAGE_THUMBNAIL_PATH + " TEXT,"
                     + COLUMN_CATEGORY_ID + " INTEGER,"
                     + "FOREIGN KEY(" + COLUMN_CATEGORY_ID + ") REFERENCES "
                     + TABLE_CATEGORIES + "(" + COLUMN_ID + ")"
@@ -78,6 +233,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     + ")";
             db.execSQL(CREATE_CART_TABLE);
 
+            createIndexes(db);
+            createSearchIndex(db);
+
             // Insert default data
             insertDefaultCategories(db);
             insertDefaultProducts(db);
@@ -99,9 +257,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 String imagePath = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH));
                 int categoryId = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CATEGORY_ID));
 
-                cursor.close();
                 int imageResId = getImageResourceId(imagePath);
-                return new Product(id, name, description, price, imageResId, categoryId);
+                Product product = new Product(id, name, description, price, imageResId, categoryId);
+                product.setImagePath(imagePath);
+                readImageSizes(cursor, product);
+                cursor.close();
+                return product;
             }
             if (cursor != null) cursor.close();
         } catch (Exception e) {
@@ -134,9 +295,26 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 // Update existing products with default category (set to first category)
                 updateExistingProductsWithCategory(db);
             }
+            if (oldVersion < 3) {
+                migrateToVersion3(db);
+            }
+            if (oldVersion < 4) {
+                // Existing custom images keep working through image_path until re-imported
+                db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_IMAGE_DETAIL_PATH + " TEXT");
+                db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_IMAGE_LIST_PATH + " TEXT");
+                db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_IMAGE_THUMBNAIL_PATH + " TEXT");
+            }
+            if (oldVersion < 5) {
+                long start = SystemClock.elapsedRealtime();
+                createSearchIndex(db);
+                // Index the rows that already exist
+                db.execSQL("INSERT INTO " + TABLE_PRODUCTS_FTS + "(" + TABLE_PRODUCTS_FTS + ") VALUES('rebuild')");
+                Log.i(TAG, "v5 migration: search index took " + (SystemClock.elapsedRealtime() - start) + " ms");
+            }
         } catch (Exception e) {
             e.printStackTrace();
             // If migration fails, recreate tables
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCTS_FTS);
             db.execSQL("DROP TABLE IF EXISTS " + TABLE_CART);
             db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCTS);
             db.execSQL("DROP TABLE IF EXISTS " + TABLE_CATEGORIES);
@@ -144,6 +322,72 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    // The triggers keep the index in step with every insert, update and delete on products,
+    // whichever code path (dialogs, bulk import) made it
+    private void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_PRODUCTS_FTS + " USING fts4("
+                + "content=\"" + TABLE_PRODUCTS + "\", " + COLUMN_NAME + ", " + COLUMN_DESCRIPTION + ")");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS products_fts_before_delete BEFORE DELETE ON " + TABLE_PRODUCTS
+                + " BEGIN DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old." + COLUMN_ID + "; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS products_fts_before_update BEFORE UPDATE OF "
+                + COLUMN_NAME + ", " + COLUMN_DESCRIPTION + " ON " + TABLE_PRODUCTS
+                + " BEGIN DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old." + COLUMN_ID + "; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS products_fts_after_update AFTER UPDATE OF "
+                + COLUMN_NAME + ", " + COLUMN_DESCRIPTION + " ON " + TABLE_PRODUCTS
+                + " BEGIN INSERT INTO " + TABLE_PRODUCTS_FTS + "(docid, " + COLUMN_NAME + ", " + COLUMN_DESCRIPTION + ")"
+                + " VALUES (new." + COLUMN_ID + ", new." + COLUMN_NAME + ", new." + COLUMN_DESCRIPTION + "); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS products_fts_after_insert AFTER INSERT ON " + TABLE_PRODUCTS
+                + " BEGIN INSERT INTO " + TABLE_PRODUCTS_FTS + "(docid, " + COLUMN_NAME + ", " + COLUMN_DESCRIPTION + ")"
+                + " VALUES (new." + COLUMN_ID + ", new." + COLUMN_NAME + ", new." + COLUMN_DESCRIPTION + "); END");
+    }
+
+    // (category_id, id) serves category filters and the keyset page order;
+    // the unique cart key turns every cart lookup by product into an index seek
+    private void createIndexes(SQLiteDatabase db) {
+        createProductCategoryIndex(db);
+        createCartProductIndex(db);
+    }
+
+    private void createProductCategoryIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_PRODUCTS_CATEGORY + " ON "
+                + TABLE_PRODUCTS + "(" + COLUMN_CATEGORY_ID + ", " + COLUMN_ID + ")");
+    }
+
+    private void createCartProductIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_CART_PRODUCT + " ON "
+                + TABLE_CART + "(" + COLUMN_PRODUCT_ID + ")");
+    }
+
+    private void migrateToVersion3(SQLiteDatabase db) {
+        long migrationStart = SystemClock.elapsedRealtime();
+
+        // Step 1: index products by category
+        long stepStart = SystemClock.elapsedRealtime();
+        createProductCategoryIndex(db);
+        Log.i(TAG, "v3 migration: products category index took "
+                + (SystemClock.elapsedRealtime() - stepStart) + " ms");
+
+        // Step 2: fold duplicate cart rows into the oldest row per product
+        stepStart = SystemClock.elapsedRealtime();
+        db.execSQL("UPDATE " + TABLE_CART + " SET " + COLUMN_QUANTITY + " = ("
+                + "SELECT SUM(" + COLUMN_QUANTITY + ") FROM " + TABLE_CART + " c2"
+                + " WHERE c2." + COLUMN_PRODUCT_ID + " = " + TABLE_CART + "." + COLUMN_PRODUCT_ID + ")"
+                + " WHERE " + COLUMN_ID + " IN (SELECT MIN(" + COLUMN_ID + ") FROM " + TABLE_CART
+                + " GROUP BY " + COLUMN_PRODUCT_ID + " HAVING COUNT(*) > 1)");
+        db.execSQL("DELETE FROM " + TABLE_CART + " WHERE " + COLUMN_ID + " NOT IN ("
+                + "SELECT MIN(" + COLUMN_ID + ") FROM " + TABLE_CART + " GROUP BY " + COLUMN_PRODUCT_ID + ")");
+        Log.i(TAG, "v3 migration: cart deduplication took "
+                + (SystemClock.elapsedRealtime() - stepStart) + " ms");
+
+        // Step 3: unique cart key (fails if step 2 left duplicates behind)
+        stepStart = SystemClock.elapsedRealtime();
+        createCartProductIndex(db);
+        Log.i(TAG, "v3 migration: unique cart index took "
+                + (SystemClock.elapsedRealtime() - stepStart) + " ms");
+
+        Log.i(TAG, "v3 migration finished in " + (SystemClock.elapsedRealtime() - migrationStart) + " ms");
+    }
+
     // Category operations (Read-only)
 
     public List<Category> getAllCategories() {
@@ -170,7 +414,51 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return categories;
     }
 
-    // Get products by category (including "All" option)
+    /**
+     * Every category with its product count and price range, in the same order as
+     * getAllCategories. One pass: each category's products are read through the
+     * (category_id, id) index and aggregated by the GROUP BY.
+     */
+    public List<CategorySummary> getCategorySummaries() {
+        return queryCategorySummaries(null, null);
+    }
+
+    // One category's summary, for refreshing a price range after its min or max row changed
+    public CategorySummary getCategorySummary(int categoryId) {
+        List<CategorySummary> summaries = queryCategorySummaries("c." + COLUMN_ID + " = ?",
+                new String[]{String.valueOf(categoryId)});
+        return summaries.isEmpty() ? null : summaries.get(0);
+    }
+
+    private List<CategorySummary> queryCategorySummaries(String where, String[] args) {
+        List<CategorySummary> summaries = new ArrayList<>();
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+
+            String query = "SELECT c." + COLUMN_ID + ", c." + COLUMN_CATEGORY_NAME + ", COUNT(p." + COLUMN_ID + "),"
+                    + " MIN(p." + COLUMN_PRICE + "), MAX(p." + COLUMN_PRICE + ")"
+                    + " FROM " + TABLE_CATEGORIES + " c LEFT JOIN " + TABLE_PRODUCTS + " p"
+                    + " ON p." + COLUMN_CATEGORY_ID + " = c." + COLUMN_ID
+                    + (where != null ? " WHERE " + where : "")
+                    + " GROUP BY c." + COLUMN_ID
+                    + " ORDER BY c." + COLUMN_CATEGORY_NAME;
+
+            Cursor cursor = db.rawQuery(query, args);
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    // MIN/MAX of an empty category are NULL, read as 0
+                    summaries.add(new CategorySummary(cursor.getInt(0), cursor.getString(1),
+                            cursor.getInt(2), cursor.getDouble(3), cursor.getDouble(4)));
+                }
+                cursor.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return summaries;
+    }
+
+    // Get products by category (including "All" option), as list rows
     public List<Product> getProductsByCategory(int categoryId) {
         List<Product> products = new ArrayList<>();
         try {
@@ -178,25 +466,16 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             Cursor cursor;
 
             if (categoryId == 0) { // Show all products
-                cursor = db.query(TABLE_PRODUCTS, null, null, null, null, null, null);
+                cursor = db.rawQuery("SELECT " + LIST_COLUMNS + " FROM " + TABLE_PRODUCTS
+                        + " ORDER BY " + COLUMN_CATEGORY_ID + ", " + COLUMN_ID, null);
             } else { // Show products by specific category
-                cursor = db.query(TABLE_PRODUCTS, null,
-                        COLUMN_CATEGORY_ID + "=?", new String[]{String.valueOf(categoryId)},
-                        null, null, null);
+                cursor = db.rawQuery("SELECT " + LIST_COLUMNS + " FROM " + TABLE_PRODUCTS
+                                + " WHERE " + COLUMN_CATEGORY_ID + " = ? ORDER BY " + COLUMN_ID,
+                        new String[]{String.valueOf(categoryId)});
             }
 
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID));
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME));
-                    String description = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION));
-                    double price = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRICE));
-                    String imagePath = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH));
-
-                    int imageResId = getImageResourceId(imagePath);
-                    Product product = new Product(id, name, description, price, imageResId);
-                    products.add(product);
-                } while (cursor.moveToNext());
+            if (cursor != null) {
+                readListRows(cursor, products);
                 cursor.close();
             }
         } catch (Exception e) {
@@ -205,7 +484,272 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return products;
     }
 
+    /**
+     * Keyset-paginated product listing ordered by (category_id, id).
+     * Pass the category id and id of the last row already shown (0, 0 for the first page);
+     * the query seeks straight past that key instead of skipping rows with OFFSET,
+     * so every page costs the same no matter how deep the user has scrolled.
+     */
+    public List<Product> getProductsPage(int categoryId, int afterCategoryId, int afterId, int limit) {
+        List<Product> products = new ArrayList<>();
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor;
+
+            if (categoryId == 0) { // All products, in (category_id, id) order
+                cursor = db.rawQuery(PRODUCTS_PAGE_QUERY,
+                        new String[]{String.valueOf(afterCategoryId), String.valueOf(afterId), String.valueOf(limit),
+                                String.valueOf(afterCategoryId), String.valueOf(limit), String.valueOf(limit)});
+            } else { // Single category, in id order
+                cursor = db.rawQuery(CATEGORY_PAGE_QUERY,
+                        new String[]{String.valueOf(categoryId), String.valueOf(afterId), String.valueOf(limit)});
+            }
+
+            if (cursor != null) {
+                readListRows(cursor, products);
+                cursor.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return products;
+    }
+
+    /**
+     * Full-text search over name and description, limited to one category unless categoryId is 0.
+     * Every word of the query must match (as a prefix, so "whey iso" finds "Whey Isolate").
+     * Results are ranked by BM25 (see {@link FtsRank}), a name hit weighing three times a
+     * description hit; ties keep id order. Every match is scored from its matchinfo, and
+     * only the best rows are then read, in one query by primary key.
+     * Returns null if the search was cancelled through the signal.
+     */
+    public List<Product> searchProducts(String query, int categoryId, int limit,
+                                        CancellationSignal cancellationSignal) {
+        List<Product> products = new ArrayList<>();
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) return products;
+        int rowLimit = limit > 0 ? limit : DEFAULT_SEARCH_LIMIT;
+
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            String[] args = categoryId != 0
+                    ? new String[]{match, String.valueOf(categoryId)}
+                    : new String[]{match};
+            List<Integer> rankedIds = new ArrayList<>();
+            Cursor cursor = db.rawQuery(searchRankingQuery(categoryId != 0), args, cancellationSignal);
+            if (cursor != null) {
+                rankedIds = bestMatches(cursor, rowLimit);
+                cursor.close();
+            }
+            if (rankedIds.isEmpty()) return products;
+            products = readListRowsInOrder(db, rankedIds, cancellationSignal);
+        } catch (OperationCanceledException e) {
+            return null; // a newer search replaced this one
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return products;
+    }
+
+    // List rows for the ids (at most a few hundred), in the same order; ids without a row are skipped
+    public List<Product> getProductListRows(List<Integer> ids) {
+        try {
+            return readListRowsInOrder(this.getReadableDatabase(), ids, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    private List<Product> readListRowsInOrder(SQLiteDatabase db, List<Integer> ids,
+                                              CancellationSignal cancellationSignal) {
+        List<Product> products = new ArrayList<>();
+        if (ids.isEmpty()) return products;
+        String[] idArgs = new String[ids.size()];
+        for (int i = 0; i < idArgs.length; i++) idArgs[i] = String.valueOf(ids.get(i));
+        List<Product> rows = new ArrayList<>();
+        Cursor cursor = db.rawQuery(listRowsByIdQuery(idArgs.length), idArgs, cancellationSignal);
+        if (cursor != null) {
+            readListRows(cursor, rows);
+            cursor.close();
+        }
+        Map<Integer, Product> rowsById = new HashMap<>();
+        for (Product row : rows) rowsById.put(row.getId(), row);
+        for (Integer id : ids) {
+            Product row = rowsById.get(id);
+            if (row != null) products.add(row);
+        }
+        return products;
+    }
+
+    // docid and matchinfo of every match, optionally only those in one category (second argument)
+    static String searchRankingQuery(boolean inCategory) {
+        return "SELECT docid, matchinfo(" + TABLE_PRODUCTS_FTS + ", '" + FtsRank.MATCHINFO_FORMAT + "')"
+                + " FROM " + TABLE_PRODUCTS_FTS + " WHERE " + TABLE_PRODUCTS_FTS + " MATCH ?"
+                + (inCategory ? " AND docid IN (SELECT " + COLUMN_ID + " FROM " + TABLE_PRODUCTS
+                + " WHERE " + COLUMN_CATEGORY_ID + " = ?)" : "");
+    }
+
+    static String listRowsByIdQuery(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        return "SELECT " + LIST_COLUMNS + " FROM " + TABLE_PRODUCTS
+                + " WHERE " + COLUMN_ID + " IN (" + placeholders + ")";
+    }
+
+    // Ids of the highest scoring rows of a searchRankingQuery cursor, best first
+    private static List<Integer> bestMatches(Cursor cursor, int limit) {
+        // Min-heap of {score, id}: the weakest of the best rows so far is on top
+        PriorityQueue<double[]> best = new PriorityQueue<>(limit + 1, (a, b) -> a[0] != b[0]
+                ? Double.compare(a[0], b[0]) : Double.compare(b[1], a[1]));
+        while (cursor.moveToNext()) {
+            double score = FtsRank.score(cursor.getBlob(1), SEARCH_COLUMN_WEIGHTS);
+            best.add(new double[]{score, cursor.getInt(0)});
+            if (best.size() > limit) best.poll();
+        }
+        Integer[] ids = new Integer[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = (int) best.poll()[1];
+        }
+        return Arrays.asList(ids);
+    }
+
+    // User text -> FTS4 query: each word as a prefix term.
+    // Everything but letters and digits is dropped so the input can't form MATCH syntax.
+    private static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        if (query == null) return "";
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(word.toLowerCase(Locale.ROOT)).append('*');
+        }
+        return match.toString();
+    }
+
+    /**
+     * Details screen data for each id, in one round trip: the product row (with its image
+     * paths) joined with its category's name. The gallery passes the ids of the rows on
+     * screen, so a single IN (...) query fills the detail cache for all of them.
+     */
+    public List<ProductDetail> getProductDetails(List<Integer> ids) {
+        List<ProductDetail> details = new ArrayList<>();
+        if (ids == null || ids.isEmpty()) return details;
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+
+            StringBuilder placeholders = new StringBuilder();
+            String[] args = new String[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                placeholders.append(i == 0 ? "?" : ", ?");
+                args[i] = String.valueOf(ids.get(i));
+            }
+            String query = "SELECT p.*, c." + COLUMN_CATEGORY_NAME
+                    + " FROM " + TABLE_PRODUCTS + " p LEFT JOIN " + TABLE_CATEGORIES + " c"
+                    + " ON c." + COLUMN_ID + " = p." + COLUMN_CATEGORY_ID
+                    + " WHERE p." + COLUMN_ID + " IN (" + placeholders + ")";
+
+            Cursor cursor = db.rawQuery(query, args);
+            if (cursor != null) {
+                List<Product> products = new ArrayList<>();
+                readProducts(cursor, products);
+                // Same rows, same order: pick up the category names on a second pass
+                int categoryNameIndex = cursor.getColumnIndexOrThrow(COLUMN_CATEGORY_NAME);
+                for (int i = 0; i < products.size() && cursor.moveToPosition(i); i++) {
+                    details.add(new ProductDetail(products.get(i), cursor.getString(categoryNameIndex)));
+                }
+                cursor.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return details;
+    }
+
+    public ProductDetail getProductDetail(int id) {
+        List<ProductDetail> details = getProductDetails(Collections.singletonList(id));
+        return details.isEmpty() ? null : details.get(0);
+    }
+
+    // Reads every row of a products cursor with the column indexes looked up once
+    private void readProducts(Cursor cursor, List<Product> products) {
+        if (!cursor.moveToFirst()) return;
+        int idIndex = cursor.getColumnIndexOrThrow(COLUMN_ID);
+        int nameIndex = cursor.getColumnIndexOrThrow(COLUMN_NAME);
+        int descriptionIndex = cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION);
+        int priceIndex = cursor.getColumnIndexOrThrow(COLUMN_PRICE);
+        int imagePathIndex = cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH);
+        int categoryIdIndex = cursor.getColumnIndexOrThrow(COLUMN_CATEGORY_ID);
+        do {
+            String imagePath = cursor.getString(imagePathIndex);
+            Product product = new Product(cursor.getInt(idIndex), cursor.getString(nameIndex),
+                    cursor.getString(descriptionIndex), cursor.getDouble(priceIndex),
+                    getImageResourceId(imagePath), cursor.getInt(categoryIdIndex));
+            product.setImagePath(imagePath);
+            readImageSizes(cursor, product);
+            products.add(product);
+        } while (cursor.moveToNext());
+    }
+
+    // Same, for cursors over LIST_COLUMNS: a description longer than the list length is cut and flagged
+    private void readListRows(Cursor cursor, List<Product> products) {
+        int start = products.size();
+        readProducts(cursor, products);
+        for (int i = start; i < products.size(); i++) {
+            Product product = products.get(i);
+            String description = product.getDescription();
+            if (description != null && description.length() > LIST_DESCRIPTION_LENGTH) {
+                product.setDescription(description.substring(0, LIST_DESCRIPTION_LENGTH));
+                product.setDescriptionTruncated(true);
+            }
+        }
+    }
+
+    // One product as a list row, for keeping list caches current after a write
+    public Product getProductListRow(int id) {
+        List<Product> products = new ArrayList<>();
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor = db.rawQuery(LIST_ROW_QUERY, new String[]{String.valueOf(id)});
+            if (cursor != null) {
+                readListRows(cursor, products);
+                cursor.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return products.isEmpty() ? null : products.get(0);
+    }
+
     // Updated product operations to include category
+    // INSERT for CatalogImporter; bind name, description, price, image_path, category_id in that order
+    SQLiteStatement compileProductInsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT INTO " + TABLE_PRODUCTS + "("
+                + COLUMN_NAME + ", " + COLUMN_DESCRIPTION + ", " + COLUMN_PRICE + ", "
+                + COLUMN_IMAGE_PATH + ", " + COLUMN_CATEGORY_ID + ") VALUES (?, ?, ?, ?, ?)");
+    }
+
+    // Category name (lower case, trimmed) -> id, for resolving names in bulk imports
+    public Map<String, Integer> getCategoryIdsByName() {
+        Map<String, Integer> ids = new HashMap<>();
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor = db.query(TABLE_CATEGORIES, new String[]{COLUMN_ID, COLUMN_CATEGORY_NAME},
+                    null, null, null, null, null);
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    ids.put(cursor.getString(1).trim().toLowerCase(Locale.ROOT), cursor.getInt(0));
+                }
+                cursor.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return ids;
+    }
+
     public long addProduct(String name, String description, double price, String imagePath, int categoryId) {
         try {
             SQLiteDatabase db = this.getWritableDatabase();
@@ -222,35 +766,62 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    // Adds a product together with every stored size of its image
+    public long addProduct(String name, String description, double price, ProductImage image, int categoryId) {
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_NAME, name);
+            values.put(COLUMN_DESCRIPTION, description);
+            values.put(COLUMN_PRICE, price);
+            putImageSizes(values, image);
+            values.put(COLUMN_CATEGORY_ID, categoryId);
+            return db.insert(TABLE_PRODUCTS, null, values);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
     // Overloaded method for backward compatibility
     public long addProduct(String name, String description, double price, String imagePath) {
         return addProduct(name, description, price, imagePath, 1); // Default to first category
     }
 
+    // Every product as a list row, in (category_id, id) order
     public List<Product> getAllProducts() {
-        List<Product> products = new ArrayList<>();
+        return getProductsByCategory(0);
+    }
+
+    // Receives catalog rows column by column, without a Product per row
+    public interface CatalogRowSink {
+        void add(int id, int categoryId, double price, String name);
+    }
+
+    /**
+     * Streams id, category, price and name of every product into the sink, e.g. to fill
+     * the in-memory catalog columns and name index. Returns false if the read failed part way.
+     */
+    public boolean readCatalogColumns(CatalogRowSink sink) {
         try {
             SQLiteDatabase db = this.getReadableDatabase();
-            Cursor cursor = db.query(TABLE_PRODUCTS, null, null, null, null, null, null);
-
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID));
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME));
-                    String description = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION));
-                    double price = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRICE));
-                    String imagePath = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH));
-
-                    int imageResId = getImageResourceId(imagePath);
-                    Product product = new Product(id, name, description, price, imageResId);
-                    products.add(product);
-                } while (cursor.moveToNext());
-                cursor.close();
+            Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_CATEGORY_ID + ", "
+                    + COLUMN_PRICE + ", " + COLUMN_NAME + " FROM " + TABLE_PRODUCTS, null);
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        sink.add(cursor.getInt(0), cursor.isNull(1) ? 0 : cursor.getInt(1),
+                                cursor.getDouble(2), cursor.getString(3));
+                    }
+                } finally {
+                    cursor.close();
+                }
             }
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
+            return false;
         }
-        return products;
     }
 
     public boolean updateProduct(int id, String name, String description, double price, String imagePath, int categoryId) {
@@ -271,6 +842,43 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    // Update that replaces the image with a newly imported one (every stored size)
+    public boolean updateProduct(int id, String name, String description, double price, ProductImage image, int categoryId) {
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_NAME, name);
+            values.put(COLUMN_DESCRIPTION, description);
+            values.put(COLUMN_PRICE, price);
+            putImageSizes(values, image);
+            values.put(COLUMN_CATEGORY_ID, categoryId);
+
+            int result = db.update(TABLE_PRODUCTS, values, COLUMN_ID + "=?", new String[]{String.valueOf(id)});
+            return result > 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Same update without touching image_path, so callers don't have to read it back first
+    public boolean updateProductKeepingImage(int id, String name, String description, double price, int categoryId) {
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_NAME, name);
+            values.put(COLUMN_DESCRIPTION, description);
+            values.put(COLUMN_PRICE, price);
+            values.put(COLUMN_CATEGORY_ID, categoryId);
+
+            int result = db.update(TABLE_PRODUCTS, values, COLUMN_ID + "=?", new String[]{String.valueOf(id)});
+            return result > 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     // Overloaded method for backward compatibility
     public boolean updateProduct(int id, String name, String description, double price, String imagePath) {
         return updateProduct(id, name, description, price, imagePath, 1); // Default category
@@ -292,29 +900,44 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     // Cart operations (unchanged)
     public boolean addToCart(int productId) {
+        return changeCartQuantity(productId, 1);
+    }
+
+    /**
+     * Adds delta units (negative to take some away) to a product's cart line.
+     * A positive delta is one INSERT OR REPLACE that creates the line or adds to it;
+     * SQLite on API 24 has no ON CONFLICT DO UPDATE, so the existing row is joined in
+     * and replaced under the same id. Taking away the last unit deletes the line.
+     */
+    public boolean changeCartQuantity(int productId, int delta) {
+        if (delta == 0) return true;
         try {
             SQLiteDatabase db = this.getWritableDatabase();
+            synchronized (cartStatementLock) {
+                if (delta > 0) {
+                    if (cartAddStatement == null) {
+                        cartAddStatement = db.compileStatement(CART_ADD_SQL);
+                    }
+                    cartAddStatement.bindLong(1, delta);
+                    cartAddStatement.bindLong(2, productId);
+                    return cartAddStatement.executeInsert() != -1;
+                }
 
-            Cursor cursor = db.query(TABLE_CART, null,
-                    COLUMN_PRODUCT_ID + "=?", new String[]{String.valueOf(productId)},
-                    null, null, null);
-
-            if (cursor != null && cursor.getCount() > 0) {
-                cursor.moveToFirst();
-                int currentQuantity = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY));
-                ContentValues values = new ContentValues();
-                values.put(COLUMN_QUANTITY, currentQuantity + 1);
-                cursor.close();
-                int result = db.update(TABLE_CART, values, COLUMN_PRODUCT_ID + "=?",
-                        new String[]{String.valueOf(productId)});
-                return result > 0;
-            } else {
-                if (cursor != null) cursor.close();
-                ContentValues values = new ContentValues();
-                values.put(COLUMN_PRODUCT_ID, productId);
-                values.put(COLUMN_QUANTITY, 1);
-                long result = db.insert(TABLE_CART, null, values);
-                return result != -1;
+                if (cartDecrementStatement == null) {
+                    cartDecrementStatement = db.compileStatement(CART_DECREMENT_SQL);
+                }
+                db.beginTransaction();
+                try {
+                    cartDecrementStatement.bindLong(1, delta);
+                    cartDecrementStatement.bindLong(2, productId);
+                    cartDecrementStatement.bindLong(3, delta);
+                    boolean changed = cartDecrementStatement.executeUpdateDelete() > 0
+                            || deleteCartLine(db, productId);
+                    db.setTransactionSuccessful();
+                    return changed;
+                } finally {
+                    db.endTransaction();
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -322,45 +945,127 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
-    public List<Product> getCartItems() {
-        List<Product> cartItems = new ArrayList<>();
+    // Buffered taps (product id -> units) written in one transaction; false if any line failed
+    public boolean applyCartDeltas(Map<Integer, Integer> deltas) {
         try {
-            SQLiteDatabase db = this.getReadableDatabase();
+            SQLiteDatabase db = this.getWritableDatabase();
+            boolean allApplied = true;
+            db.beginTransaction();
+            try {
+                for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+                    allApplied &= changeCartQuantity(delta.getKey(), delta.getValue());
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return allApplied;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
 
-            String query = "SELECT p.*, c." + COLUMN_QUANTITY + " FROM " + TABLE_PRODUCTS + " p " +
-                    "INNER JOIN " + TABLE_CART + " c ON p." + COLUMN_ID + " = c." + COLUMN_PRODUCT_ID;
+    // Caller holds cartStatementLock
+    private boolean deleteCartLine(SQLiteDatabase db, int productId) {
+        if (cartDeleteStatement == null) {
+            cartDeleteStatement = db.compileStatement(CART_DELETE_SQL);
+        }
+        cartDeleteStatement.bindLong(1, productId);
+        return cartDeleteStatement.executeUpdateDelete() > 0;
+    }
 
-            Cursor cursor = db.rawQuery(query, null);
+    // One line per product with its quantity, not one Product per unit
+    public List<CartItem> getCartItems() {
+        List<CartItem> cartItems = new ArrayList<>();
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor = db.rawQuery(CART_ITEMS_QUERY, null);
 
             if (cursor != null && cursor.moveToFirst()) {
+                int idIndex = cursor.getColumnIndexOrThrow(COLUMN_ID);
+                int nameIndex = cursor.getColumnIndexOrThrow(COLUMN_NAME);
+                int priceIndex = cursor.getColumnIndexOrThrow(COLUMN_PRICE);
+                int imagePathIndex = cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH);
+                int categoryIdIndex = cursor.getColumnIndexOrThrow(COLUMN_CATEGORY_ID);
+                int quantityIndex = cursor.getColumnIndexOrThrow(COLUMN_QUANTITY);
                 do {
-                    int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID));
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME));
-                    String description = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION));
-                    double price = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRICE));
-                    String imagePath = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_PATH));
-                    int quantity = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QUANTITY));
+                    String imagePath = cursor.getString(imagePathIndex);
+                    // The cart shows name, price and thumbnail only; no description is read
+                    Product product = new Product(cursor.getInt(idIndex), cursor.getString(nameIndex), null,
+                            cursor.getDouble(priceIndex), getImageResourceId(imagePath), cursor.getInt(categoryIdIndex));
+                    product.setImagePath(imagePath);
+                    readImageSizes(cursor, product);
+                    cartItems.add(new CartItem(product, cursor.getInt(quantityIndex)));
+                } while (cursor.moveToNext());
+            }
+            if (cursor != null) cursor.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return cartItems;
+    }
 
-                    int imageResId = getImageResourceId(imagePath);
+    // Cart total and unit count in one aggregate query (null if the query failed)
+    public CartSummary getCartSummary() {
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
 
-                    for (int i = 0; i < quantity; i++) {
-                        Product product = new Product(id, name, description, price, imageResId);
-                        cartItems.add(product);
-                    }
-                } while (cursor.moveToNext());
+            Cursor cursor = db.rawQuery(CART_SUMMARY_QUERY, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                // SUM over no rows is NULL, which getDouble/getInt read as 0
+                CartSummary summary = new CartSummary(cursor.getDouble(0), cursor.getInt(1));
                 cursor.close();
+                return summary;
             }
+            if (cursor != null) cursor.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return cartItems;
+        return null;
+    }
+
+    // Units of the product in the cart, 0 if it has no line
+    public int getCartQuantity(int productId) {
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor = db.rawQuery(CART_QUANTITY_QUERY, new String[]{String.valueOf(productId)});
+            int quantity = cursor != null && cursor.moveToFirst() ? cursor.getInt(0) : 0;
+            if (cursor != null) cursor.close();
+            return quantity;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    // Sets the quantity of a cart line; zero or less removes the line
+    public boolean setCartQuantity(int productId, int quantity) {
+        if (quantity <= 0) {
+            return removeFromCart(productId);
+        }
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            synchronized (cartStatementLock) {
+                if (cartSetQuantityStatement == null) {
+                    cartSetQuantityStatement = db.compileStatement(CART_SET_QUANTITY_SQL);
+                }
+                cartSetQuantityStatement.bindLong(1, quantity);
+                cartSetQuantityStatement.bindLong(2, productId);
+                return cartSetQuantityStatement.executeUpdateDelete() > 0;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
     public boolean removeFromCart(int productId) {
         try {
             SQLiteDatabase db = this.getWritableDatabase();
-            int result = db.delete(TABLE_CART, COLUMN_PRODUCT_ID + "=?", new String[]{String.valueOf(productId)});
-            return result > 0;
+            synchronized (cartStatementLock) {
+                return deleteCartLine(db, productId);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return false;
@@ -447,6 +1152,23 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    private void putImageSizes(ContentValues values, ProductImage image) {
+        values.put(COLUMN_IMAGE_PATH, image.getOriginalPath());
+        values.put(COLUMN_IMAGE_DETAIL_PATH, image.getDetailPath());
+        values.put(COLUMN_IMAGE_LIST_PATH, image.getListPath());
+        values.put(COLUMN_IMAGE_THUMBNAIL_PATH, image.getThumbnailPath());
+    }
+
+    // Copies the stored image sizes onto the product when the cursor has them
+    private void readImageSizes(Cursor cursor, Product product) {
+        int detailIndex = cursor.getColumnIndex(COLUMN_IMAGE_DETAIL_PATH);
+        int listIndex = cursor.getColumnIndex(COLUMN_IMAGE_LIST_PATH);
+        int thumbnailIndex = cursor.getColumnIndex(COLUMN_IMAGE_THUMBNAIL_PATH);
+        if (detailIndex != -1) product.setDetailImagePath(cursor.getString(detailIndex));
+        if (listIndex != -1) product.setListImagePath(cursor.getString(listIndex));
+        if (thumbnailIndex != -1) product.setThumbnailPath(cursor.getString(thumbnailIndex));
+    }
+
     private int getImageResourceId(String imagePath) {
         try {
             switch (imagePath) {
@@ -0,0 +1,55 @@
+package com.example.nutrago.database;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * BM25 relevance of one full-text match, computed from its FTS4 matchinfo blob.
+ * SQLite on Android can't register a ranking function before API 30, so the search
+ * query returns matchinfo(products_fts, 'pcnalx') per row and the score is worked out
+ * here: for every query term and column, term frequency (saturating, and discounted in
+ * longer than average fields) times how rare the term is across the catalog, times the
+ * column's weight.
+ */
+final class FtsRank {
+
+    // p: terms, c: columns, n: rows, a: average tokens per column, l: tokens per column in
+    // this row, x: per term and column, hits in this row / in all rows / rows with a hit
+    static final String MATCHINFO_FORMAT = "pcnalx";
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private FtsRank() {
+    }
+
+    // Higher is better; columnWeights follow the FTS table's column order
+    static double score(byte[] matchInfo, double[] columnWeights) {
+        // matchinfo is an array of 32-bit unsigned integers in the machine's byte order
+        IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int terms = info.get(0);
+        int columns = info.get(1);
+        int rows = info.get(2);
+        int averageLengths = 3;
+        int lengths = averageLengths + columns;
+        int hits = lengths + columns;
+
+        double score = 0;
+        for (int term = 0; term < terms; term++) {
+            for (int column = 0; column < columns && column < columnWeights.length; column++) {
+                int base = hits + 3 * (term * columns + column);
+                int frequency = info.get(base);
+                if (frequency == 0) continue;
+                int rowsWithTerm = info.get(base + 2);
+                double idf = Math.log(1 + (rows - rowsWithTerm + 0.5) / (rowsWithTerm + 0.5));
+                double length = info.get(lengths + column);
+                double averageLength = Math.max(1, info.get(averageLengths + column));
+                double saturated = frequency * (K1 + 1)
+                        / (frequency + K1 * (1 - B + B * length / averageLength));
+                score += columnWeights[column] * idf * saturated;
+            }
+        }
+        return score;
+    }
+}
@@ -3,9 +3,9 @@ package com.example.nutrago.dialogs;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
@@ -22,13 +22,13 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.fragment.app.DialogFragment;
 
 import com.example.nutrago.R;
-import com.example.nutrago.database.DatabaseHelper;
+import com.example.nutrago.images.ImageImportPipeline;
 import com.example.nutrago.models.Category;
+import com.example.nutrago.models.ProductImage;
+import com.example.nutrago.repository.ProductRepository;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public class AddProductDialog extends DialogFragment {
 
@@ -41,9 +41,10 @@ public class AddProductDialog extends DialogFragment {
     private Spinner categorySpinner;
     private ImageView imagePreview;
     private Button selectImageButton;
-    private String selectedImagePath = "protein_bar"; // default
+    private ProductImage selectedImage = ProductImage.single("protein_bar"); // default
     private ActivityResultLauncher<Intent> imagePickerLauncher;
-    private DatabaseHelper dbHelper;
+    private Future<?> pendingImport;
+    private ProductRepository repository;
     private List<Category> categories;
 
     public void setOnProductAddedListener(OnProductAddedListener listener) {
@@ -55,7 +56,7 @@ public class AddProductDialog extends DialogFragment {
         super.onCreate(savedInstanceState);
 
         // تهيئة قاعدة البيانات
-        dbHelper = new DatabaseHelper(getContext());
+        repository = ProductRepository.getInstance(requireContext());
 
         // إعداد مشغل اختيار الصورة
         imagePickerLauncher = registerForActivityResult(
@@ -64,27 +65,68 @@ public class AddProductDialog extends DialogFragment {
                     if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null) {
                         Uri imageUri = result.getData().getData();
                         if (imageUri != null) {
-                            try {
-                                // عرض الصورة في المعاينة
-                                InputStream inputStream = getContext().getContentResolver().openInputStream(imageUri);
-                                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                                imagePreview.setImageBitmap(bitmap);
-                                imagePreview.setVisibility(View.VISIBLE);
-
-                                // حفظ الصورة محلياً
-                                selectedImagePath = saveImageToInternalStorage(bitmap);
-                                selectImageButton.setText("Change Image");
-
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                                Toast.makeText(getContext(), "Failed to load image", Toast.LENGTH_SHORT).show();
-                            }
+                            startImageImport(imageUri);
                         }
                     }
                 }
         );
     }
 
+    // الاستيراد يتم في الخلفية: قراءة الأبعاد، فك ترميز مصغّر، وحفظ الأحجام مع عرض التقدم
+    private void startImageImport(Uri imageUri) {
+        if (pendingImport != null) {
+            pendingImport.cancel(true);
+        }
+        selectImageButton.setEnabled(false);
+        selectImageButton.setText("Importing image… 0%");
+        setAddButtonEnabled(false);
+
+        pendingImport = ImageImportPipeline.getInstance(requireContext()).importImage(imageUri,
+                new ImageImportPipeline.Listener() {
+                    @Override
+                    public void onProgress(int percent) {
+                        if (selectImageButton == null) return;
+                        selectImageButton.setText("Importing image… " + percent + "%");
+                    }
+
+                    @Override
+                    public void onImported(ProductImage image, Bitmap preview) {
+                        pendingImport = null;
+                        if (selectImageButton == null) return;
+                        selectedImage = image;
+
+                        // عرض الصورة في المعاينة
+                        if (preview != null) {
+                            imagePreview.setImageBitmap(preview);
+                            imagePreview.setVisibility(View.VISIBLE);
+                        }
+                        selectImageButton.setEnabled(true);
+                        selectImageButton.setText("Change Image");
+                        setAddButtonEnabled(true);
+                    }
+
+                    @Override
+                    public void onFailed(Exception error) {
+                        pendingImport = null;
+                        if (selectImageButton == null) return;
+                        selectImageButton.setEnabled(true);
+                        selectImageButton.setText("Select Product Image");
+                        setAddButtonEnabled(true);
+                        Toast.makeText(getContext(), "Failed to load image", Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
+    private void setAddButtonEnabled(boolean enabled) {
+        Dialog dialog = getDialog();
+        if (dialog instanceof AlertDialog) {
+            Button addButton = ((AlertDialog) dialog).getButton(AlertDialog.BUTTON_POSITIVE);
+            if (addButton != null) {
+                addButton.setEnabled(enabled);
+            }
+        }
+    }
+
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
         AlertDialog.Builder builder = new AlertDialog.Builder(requireActivity());
@@ -110,16 +152,19 @@ public class AddProductDialog extends DialogFragment {
                         Category selectedCategory = (Category) categorySpinner.getSelectedItem();
                         int categoryId = selectedCategory != null ? selectedCategory.getId() : 1;
 
-                        long result = dbHelper.addProduct(name, description, price, selectedImagePath, categoryId);
-
-                        if (result != -1) {
-                            Toast.makeText(getContext(), "Product added successfully", Toast.LENGTH_SHORT).show();
-                            if (listener != null) {
-                                listener.onProductAdded();
+                        // الحوار يُغلق قبل انتهاء الحفظ، لذلك نحتفظ بسياق التطبيق والمستمع
+                        final Context appContext = requireContext().getApplicationContext();
+                        final OnProductAddedListener addedListener = listener;
+                        repository.addProduct(name, description, price, selectedImage, categoryId, result -> {
+                            if (result != null && result != -1) {
+                                Toast.makeText(appContext, "Product added successfully", Toast.LENGTH_SHORT).show();
+                                if (addedListener != null) {
+                                    addedListener.onProductAdded();
+                                }
+                            } else {
+                                Toast.makeText(appContext, "Failed to add product", Toast.LENGTH_SHORT).show();
                             }
-                        } else {
-                            Toast.makeText(getContext(), "Failed to add product", Toast.LENGTH_SHORT).show();
-                        }
+                        });
                     } catch (NumberFormatException e) {
                         Toast.makeText(getContext(), "Invalid price format", Toast.LENGTH_SHORT).show();
                     }
@@ -206,8 +251,14 @@ public class AddProductDialog extends DialogFragment {
     }
 
     private void loadCategories() {
+        repository.getAllCategories(this::showCategories);
+    }
+
+    private void showCategories(List<Category> loaded) {
+        // الحوار قد يكون أُغلق قبل وصول الفئات
+        if (categorySpinner == null || getContext() == null) return;
         try {
-            categories = dbHelper.getAllCategories();
+            categories = loaded;
 
             if (categories != null && !categories.isEmpty()) {
                 // إنشاء adapter للفئات
@@ -268,27 +319,14 @@ public class AddProductDialog extends DialogFragment {
         imagePickerLauncher.launch(intent);
     }
 
-    private String saveImageToInternalStorage(Bitmap bitmap) {
-        try {
-            // إنشاء اسم ملف فريد
-            String fileName = "product_" + System.currentTimeMillis() + ".jpg";
-            File file = new File(getContext().getFilesDir(), fileName);
-
-            // حفظ الصورة
-            FileOutputStream fos = new FileOutputStream(file);
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 85, fos);
-            fos.close();
-
-            return fileName;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "protein_bar"; // fallback to default
-        }
-    }
-
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        // إلغاء الاستيراد الجاري إن وجد
+        if (pendingImport != null) {
+            pendingImport.cancel(true);
+            pendingImport = null;
+        }
         // تنظيف المراجع
         etName = null;
         etDescription = null;
@@ -296,7 +334,7 @@ public class AddProductDialog extends DialogFragment {
         categorySpinner = null;
         imagePreview = null;
         selectImageButton = null;
-        dbHelper = null;
+        repository = null;
         categories = null;
     }
 }
\ No newline at end of file
@@ -1,23 +1,36 @@
 package com.example.nutrago.dialogs;
 
+import android.app.Activity;
 import android.app.Dialog;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Bundle;
+import android.provider.MediaStore;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.ArrayAdapter;
+import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.DialogFragment;
 
 import com.example.nutrago.R;
-import com.example.nutrago.database.DatabaseHelper;
+import com.example.nutrago.images.ImageImportPipeline;
 import com.example.nutrago.models.Product;
 import com.example.nutrago.models.Category;
+import com.example.nutrago.models.ProductImage;
+import com.example.nutrago.repository.ProductRepository;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 public class EditProductDialog extends DialogFragment {
 
@@ -28,8 +41,13 @@ public class EditProductDialog extends DialogFragment {
     private OnProductEditedListener listener;
     private EditText etName, etDescription, etPrice;
     private Spinner categorySpinner;
+    private ImageView imagePreview;
+    private Button selectImageButton;
+    private ProductImage newImage; // null = keep the current image
+    private ActivityResultLauncher<Intent> imagePickerLauncher;
+    private Future<?> pendingImport;
     private Product product;
-    private DatabaseHelper dbHelper;
+    private ProductRepository repository;
     private List<Category> categories;
 
     public EditProductDialog(Product product) {
@@ -40,13 +58,31 @@ public class EditProductDialog extends DialogFragment {
         this.listener = listener;
     }
 
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // نفس مسار الاستيراد المستخدم في إضافة منتج
+        imagePickerLauncher = registerForActivityResult(
+                new ActivityResultContracts.StartActivityForResult(),
+                result -> {
+                    if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null) {
+                        Uri imageUri = result.getData().getData();
+                        if (imageUri != null) {
+                            startImageImport(imageUri);
+                        }
+                    }
+                }
+        );
+    }
+
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
         AlertDialog.Builder builder = new AlertDialog.Builder(requireActivity());
         View view = createDialogView();
 
         // تهيئة قاعدة البيانات
-        dbHelper = new DatabaseHelper(getContext());
+        repository = ProductRepository.getInstance(requireContext());
 
         // تحميل الفئات
         loadCategories();
@@ -70,28 +106,46 @@ public class EditProductDialog extends DialogFragment {
                         Category selectedCategory = (Category) categorySpinner.getSelectedItem();
                         int categoryId = selectedCategory != null ? selectedCategory.getId() : 1;
 
-                        // تحديث المنتج في قاعدة البيانات
-                        boolean updated = dbHelper.updateProduct(
-                                product.getId(),
-                                name,
-                                description,
-                                price,
-                                dbHelper.getImagePath(product.getId()), // الاحتفاظ بنفس الصورة
-                                categoryId // تحديث الفئة
-                        );
-
-                        if (updated) {
-                            // إنشاء منتج محدث
-                            Product updatedProduct = new Product(product.getId(), name, description,
-                                    price, product.getImageResId(), categoryId);
-
-                            Toast.makeText(getContext(), "Product updated successfully", Toast.LENGTH_SHORT).show();
-
-                            if (listener != null) {
-                                listener.onProductEdited(updatedProduct);
+                        // الحوار يُغلق قبل انتهاء الحفظ، لذلك نحتفظ بسياق التطبيق والمستمع
+                        final Context appContext = requireContext().getApplicationContext();
+                        final OnProductEditedListener editedListener = listener;
+
+                        final ProductImage image = newImage;
+                        ProductRepository.Callback<Boolean> onUpdated = updated -> {
+                            if (Boolean.TRUE.equals(updated)) {
+                                // إنشاء منتج محدث
+                                Product updatedProduct = new Product(product.getId(), name, description,
+                                        price, product.getImageResId(), categoryId);
+                                if (image != null) {
+                                    updatedProduct.setImagePath(image.getOriginalPath());
+                                    updatedProduct.setDetailImagePath(image.getDetailPath());
+                                    updatedProduct.setListImagePath(image.getListPath());
+                                    updatedProduct.setThumbnailPath(image.getThumbnailPath());
+                                } else {
+                                    updatedProduct.setImagePath(product.getImagePath());
+                                    updatedProduct.setDetailImagePath(product.getDetailImagePath());
+                                    updatedProduct.setListImagePath(product.getListImagePath());
+                                    updatedProduct.setThumbnailPath(product.getThumbnailPath());
+                                }
+
+                                Toast.makeText(appContext, "Product updated successfully", Toast.LENGTH_SHORT).show();
+
+                                if (editedListener != null) {
+                                    editedListener.onProductEdited(updatedProduct);
+                                }
+                            } else {
+                                Toast.makeText(appContext, "Failed to update product", Toast.LENGTH_SHORT).show();
                             }
+                        };
+
+                        if (image != null) {
+                            // تحديث المنتج مع الصورة الجديدة
+                            repository.updateProduct(product.getId(), name, description, price,
+                                    image, categoryId, onUpdated);
                         } else {
-                            Toast.makeText(getContext(), "Failed to update product", Toast.LENGTH_SHORT).show();
+                            // تحديث المنتج في قاعدة البيانات مع الاحتفاظ بنفس الصورة
+                            repository.updateProductKeepingImage(product.getId(), name, description, price,
+                                    categoryId, onUpdated);
                         }
                     } catch (NumberFormatException e) {
                         Toast.makeText(getContext(), "Invalid price format", Toast.LENGTH_SHORT).show();
@@ -156,12 +210,97 @@ public class EditProductDialog extends DialogFragment {
 
         addSpace(layout);
 
+        // زر تغيير الصورة
+        selectImageButton = new Button(getContext());
+        selectImageButton.setText("Change Image");
+        selectImageButton.setBackgroundColor(0xFF009688);
+        selectImageButton.setTextColor(0xFFFFFFFF);
+        selectImageButton.setPadding(30, 20, 30, 20);
+        selectImageButton.setOnClickListener(v -> openImagePicker());
+        layout.addView(selectImageButton);
+
+        addSpace(layout);
+
+        // معاينة الصورة الجديدة
+        imagePreview = new ImageView(getContext());
+        imagePreview.setLayoutParams(new android.widget.LinearLayout.LayoutParams(300, 300));
+        imagePreview.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        imagePreview.setVisibility(View.GONE);
+        imagePreview.setBackgroundColor(0xFFEEEEEE);
+        layout.addView(imagePreview);
+
         return layout;
     }
 
+    private void openImagePicker() {
+        Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+        intent.setType("image/*");
+        imagePickerLauncher.launch(intent);
+    }
+
+    // الاستيراد يتم في الخلفية: قراءة الأبعاد، فك ترميز مصغّر، وحفظ الأحجام مع عرض التقدم
+    private void startImageImport(Uri imageUri) {
+        if (pendingImport != null) {
+            pendingImport.cancel(true);
+        }
+        selectImageButton.setEnabled(false);
+        selectImageButton.setText("Importing image… 0%");
+        setUpdateButtonEnabled(false);
+
+        pendingImport = ImageImportPipeline.getInstance(requireContext()).importImage(imageUri,
+                new ImageImportPipeline.Listener() {
+                    @Override
+                    public void onProgress(int percent) {
+                        if (selectImageButton == null) return;
+                        selectImageButton.setText("Importing image… " + percent + "%");
+                    }
+
+                    @Override
+                    public void onImported(ProductImage image, Bitmap preview) {
+                        pendingImport = null;
+                        if (selectImageButton == null) return;
+                        newImage = image;
+
+                        if (preview != null) {
+                            imagePreview.setImageBitmap(preview);
+                            imagePreview.setVisibility(View.VISIBLE);
+                        }
+                        selectImageButton.setEnabled(true);
+                        selectImageButton.setText("Change Image");
+                        setUpdateButtonEnabled(true);
+                    }
+
+                    @Override
+                    public void onFailed(Exception error) {
+                        pendingImport = null;
+                        if (selectImageButton == null) return;
+                        selectImageButton.setEnabled(true);
+                        selectImageButton.setText("Change Image");
+                        setUpdateButtonEnabled(true);
+                        Toast.makeText(getContext(), "Failed to load image", Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
+    private void setUpdateButtonEnabled(boolean enabled) {
+        Dialog dialog = getDialog();
+        if (dialog instanceof AlertDialog) {
+            Button updateButton = ((AlertDialog) dialog).getButton(AlertDialog.BUTTON_POSITIVE);
+            if (updateButton != null) {
+                updateButton.setEnabled(enabled);
+            }
+        }
+    }
+
     private void loadCategories() {
+        repository.getAllCategories(this::showCategories);
+    }
+
+    private void showCategories(List<Category> loaded) {
+        // الحوار قد يكون أُغلق قبل وصول الفئات
+        if (categorySpinner == null || getContext() == null) return;
         try {
-            categories = dbHelper.getAllCategories();
+            categories = loaded;
 
             if (categories != null && !categories.isEmpty()) {
                 // إنشاء adapter للفئات
@@ -243,12 +382,19 @@ public class EditProductDialog extends DialogFragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        // إلغاء الاستيراد الجاري إن وجد
+        if (pendingImport != null) {
+            pendingImport.cancel(true);
+            pendingImport = null;
+        }
         // تنظيف المراجع
         etName = null;
         etDescription = null;
         etPrice = null;
         categorySpinner = null;
-        dbHelper = null;
+        imagePreview = null;
+        selectImageButton = null;
+        repository = null;
         categories = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.example.nutrago.images;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.nutrago.models.ProductImage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports a picked image into the app's storage without touching the UI thread.
+ * The original bytes are streamed to disk through a small buffer, the stored copy
+ * is decoded once with sampling (bounds first), and the smaller sizes are written
+ * from that sampled bitmap. Progress and the result are posted back on the main thread.
+ */
+public class ImageImportPipeline {
+
+    public interface Listener {
+        void onProgress(int percent);
+
+        // preview is a thumbnail-sized bitmap the caller may show right away
+        void onImported(ProductImage image, Bitmap preview);
+
+        void onFailed(Exception error);
+    }
+
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    // Progress split: copying the bytes is most of the work on large photos
+    private static final int PROGRESS_COPIED = 60;
+    private static final int PROGRESS_DECODED = 75;
+    private static final int PROGRESS_SIZES_WRITTEN = 95;
+
+    private static volatile ImageImportPipeline instance;
+
+    private final Context context;
+    private final ExecutorService importExecutor;
+    private final Handler mainHandler;
+
+    public static ImageImportPipeline getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ImageImportPipeline.class) {
+                if (instance == null) {
+                    instance = new ImageImportPipeline(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ImageImportPipeline(Context context) {
+        this.context = context;
+        this.importExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nutrago-import");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    // Returns a handle the caller can cancel (e.g. when its dialog goes away)
+    public Future<?> importImage(Uri uri, Listener listener) {
+        return importExecutor.submit(() -> {
+            try {
+                ProductImage image = runImport(uri, listener);
+                Bitmap preview = decodeSampled(new File(context.getFilesDir(), image.getThumbnailPath()),
+                        ProductImageStore.THUMBNAIL_MAX_SIZE);
+                if (Thread.currentThread().isInterrupted()) return;
+                postProgress(listener, 100);
+                mainHandler.post(() -> listener.onImported(image, preview));
+            } catch (Exception e) {
+                e.printStackTrace();
+                mainHandler.post(() -> listener.onFailed(e));
+            } catch (OutOfMemoryError e) {
+                e.printStackTrace();
+                mainHandler.post(() -> listener.onFailed(new IOException("Image too large", e)));
+            }
+        });
+    }
+
+    private ProductImage runImport(Uri uri, Listener listener) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        String baseName = "product_" + System.currentTimeMillis();
+
+        // 1. Stream the original to disk
+        String originalName = baseName + ".jpg";
+        File originalFile = new File(context.getFilesDir(), originalName);
+        long totalBytes = querySize(resolver, uri);
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) throw new IOException("Cannot open " + uri);
+        try {
+            OutputStream out = new FileOutputStream(originalFile);
+            try {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                long copied = 0;
+                int lastPercent = -1;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IOException("Import cancelled");
+                    }
+                    out.write(buffer, 0, read);
+                    copied += read;
+                    if (totalBytes > 0) {
+                        int percent = (int) (copied * PROGRESS_COPIED / totalBytes);
+                        if (percent != lastPercent) {
+                            lastPercent = percent;
+                            postProgress(listener, percent);
+                        }
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            originalFile.delete();
+            throw e;
+        } finally {
+            in.close();
+        }
+        postProgress(listener, PROGRESS_COPIED);
+
+        // 2. Decode the stored copy, sampled down to about twice the largest size we keep
+        Bitmap sampled = decodeSampled(originalFile, ProductImageStore.DETAIL_MAX_SIZE * 2);
+        if (sampled == null) {
+            originalFile.delete();
+            throw new IOException("Not a decodable image: " + uri);
+        }
+        postProgress(listener, PROGRESS_DECODED);
+
+        // 3. Write the smaller sizes from the sampled bitmap
+        try {
+            ProductImage image = ProductImageStore.saveSizes(context, sampled, baseName, originalName);
+            postProgress(listener, PROGRESS_SIZES_WRITTEN);
+            return image;
+        } finally {
+            sampled.recycle();
+        }
+    }
+
+    private long querySize(ContentResolver resolver, Uri uri) {
+        try {
+            AssetFileDescriptor descriptor = resolver.openAssetFileDescriptor(uri, "r");
+            if (descriptor == null) return -1;
+            long length = descriptor.getLength();
+            descriptor.close();
+            return length;
+        } catch (Exception e) {
+            return -1; // unknown size, progress jumps straight to the copied mark
+        }
+    }
+
+    // Bounds first, then a power-of-two sample so the longest side stays near maxSize
+    private static Bitmap decodeSampled(File file, int maxSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inSampleSize = ImageLoader.calculateInSampleSize(
+                options.outWidth, options.outHeight, maxSize, maxSize);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+    }
+
+    private void postProgress(Listener listener, int percent) {
+        mainHandler.post(() -> listener.onProgress(percent));
+    }
+}
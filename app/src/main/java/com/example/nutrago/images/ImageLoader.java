@@ -0,0 +1,153 @@
+package com.example.nutrago.images;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.DrawableRes;
+
+import java.io.File;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads product images stored in getFilesDir() into ImageViews.
+ * Files are decoded off the UI thread, downsampled to the size the view
+ * actually needs, and kept in a memory-bounded LRU cache. A new request for
+ * the same ImageView (e.g. a recycled ViewHolder) cancels the previous one.
+ */
+public class ImageLoader {
+
+    private static volatile ImageLoader instance;
+
+    private final Context context;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ExecutorService decodeExecutor;
+    private final Handler mainHandler;
+
+    // Only touched on the main thread
+    private final Map<ImageView, String> pendingKeys = new WeakHashMap<>();
+    private final Map<ImageView, Future<?>> pendingTasks = new WeakHashMap<>();
+
+    public static ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ImageLoader.class) {
+                if (instance == null) {
+                    instance = new ImageLoader(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ImageLoader(Context context) {
+        this.context = context;
+
+        // An eighth of the heap, measured in KB
+        int cacheSizeKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        this.memoryCache = new LruCache<String, Bitmap>(cacheSizeKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+
+        this.decodeExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "nutrago-image");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Shows the stored image file in the view, decoded to roughly reqWidth x reqHeight pixels.
+     * fallbackResId is shown if the file is missing or can't be decoded.
+     */
+    public void load(String fileName, ImageView imageView, int reqWidth, int reqHeight,
+                     @DrawableRes int fallbackResId) {
+        cancel(imageView);
+
+        final String key = fileName + "@" + reqWidth + "x" + reqHeight;
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+
+        // Blank until the decode finishes, so a recycled row never shows the previous product
+        imageView.setImageDrawable(null);
+        pendingKeys.put(imageView, key);
+
+        Future<?> task = decodeExecutor.submit(() -> {
+            Bitmap bitmap = decodeSampled(new File(context.getFilesDir(), fileName), reqWidth, reqHeight);
+            if (bitmap != null) {
+                memoryCache.put(key, bitmap);
+            }
+            mainHandler.post(() -> {
+                // The view may have been rebound to another image meanwhile
+                if (!key.equals(pendingKeys.get(imageView))) return;
+                pendingKeys.remove(imageView);
+                pendingTasks.remove(imageView);
+                if (bitmap != null) {
+                    imageView.setImageBitmap(bitmap);
+                } else {
+                    imageView.setImageResource(fallbackResId);
+                }
+            });
+        });
+        pendingTasks.put(imageView, task);
+    }
+
+    // Drops any in-flight request for this view (call from onViewRecycled or before setting another image)
+    public void cancel(ImageView imageView) {
+        pendingKeys.remove(imageView);
+        Future<?> task = pendingTasks.remove(imageView);
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    public void clearMemoryCache() {
+        memoryCache.evictAll();
+    }
+
+    private static Bitmap decodeSampled(File file, int reqWidth, int reqHeight) {
+        try {
+            if (!file.exists()) return null;
+
+            // Read the dimensions only
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+            options.inJustDecodeBounds = false;
+            options.inPreferredConfig = Bitmap.Config.RGB_565; // product photos have no alpha
+            return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } catch (OutOfMemoryError e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Largest power of two that keeps both sides at or above the requested size
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) return inSampleSize;
+        while ((width / (inSampleSize * 2)) >= reqWidth && (height / (inSampleSize * 2)) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
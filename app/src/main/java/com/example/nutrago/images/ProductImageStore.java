@@ -0,0 +1,71 @@
+package com.example.nutrago.images;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.example.nutrago.models.ProductImage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the smaller copies of an imported product image into getFilesDir(), so each
+ * screen can decode the smallest file that still fills its view: thumbnails for cart
+ * rows, list size for gallery cards, detail size for the details page.
+ * The original itself is streamed to disk by {@link ImageImportPipeline}.
+ */
+public final class ProductImageStore {
+
+    // Longest side in pixels for each stored size
+    public static final int THUMBNAIL_MAX_SIZE = 320;  // cart rows (80dp)
+    public static final int LIST_MAX_SIZE = 720;       // gallery cards (full width x 180dp)
+    public static final int DETAIL_MAX_SIZE = 1440;    // details page (full width x 250dp)
+
+    private static final int VARIANT_QUALITY = 80;
+
+    private ProductImageStore() {
+    }
+
+    // source is the (already sampled) decoded original; originalName is the file it came from
+    public static ProductImage saveSizes(Context context, Bitmap source, String baseName,
+                                         String originalName) throws IOException {
+        String detail = writeVariant(context, source, baseName + "_detail.jpg", DETAIL_MAX_SIZE, originalName);
+        String list = writeVariant(context, source, baseName + "_list.jpg", LIST_MAX_SIZE, detail);
+        String thumbnail = writeVariant(context, source, baseName + "_thumb.jpg", THUMBNAIL_MAX_SIZE, list);
+
+        return new ProductImage(originalName, detail, list, thumbnail);
+    }
+
+    // Scales down to maxSize; if the source is already small enough, reuses the next larger file
+    private static String writeVariant(Context context, Bitmap source, String fileName, int maxSize,
+                                       String largerFile) throws IOException {
+        int longestSide = Math.max(source.getWidth(), source.getHeight());
+        if (longestSide <= maxSize) {
+            return largerFile;
+        }
+
+        float scale = (float) maxSize / longestSide;
+        int width = Math.max(1, Math.round(source.getWidth() * scale));
+        int height = Math.max(1, Math.round(source.getHeight() * scale));
+        Bitmap scaled = Bitmap.createScaledBitmap(source, width, height, true);
+        try {
+            return write(context, scaled, fileName, VARIANT_QUALITY);
+        } finally {
+            if (scaled != source) {
+                scaled.recycle();
+            }
+        }
+    }
+
+    private static String write(Context context, Bitmap bitmap, String fileName, int quality) throws IOException {
+        File file = new File(context.getFilesDir(), fileName);
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, fos);
+        } finally {
+            fos.close();
+        }
+        return fileName;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.nutrago.models;
+
+// One cart line: a product and how many units of it are in the cart
+public class CartItem {
+    private Product product;
+    private int quantity;
+
+    public CartItem(Product product, int quantity) {
+        this.product = product;
+        this.quantity = quantity;
+    }
+
+    // Getters
+    public Product getProduct() {
+        return product;
+    }
+
+    public int getProductId() {
+        return product.getId();
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public double getLineTotal() {
+        return product.getPrice() * quantity;
+    }
+
+    // Setters
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "CartItem{" +
+                "product=" + product +
+                ", quantity=" + quantity +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+
+        CartItem cartItem = (CartItem) obj;
+        return product.getId() == cartItem.product.getId();
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(product.getId());
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.nutrago.models;
+
+// Cart total price and number of units, as shown under the cart list
+public class CartSummary {
+    private final double total;
+    private final int itemCount;
+
+    public CartSummary(double total, int itemCount) {
+        this.total = total;
+        this.itemCount = itemCount;
+    }
+
+    // Getters only (immutable snapshot)
+    public double getTotal() {
+        return total;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public boolean isEmpty() {
+        return itemCount <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CartSummary{" +
+                "total=" + total +
+                ", itemCount=" + itemCount +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.nutrago.models;
+
+// A category with its number of products and their price range, as shown on the category chips
+public class CategorySummary {
+    private final int categoryId;
+    private final String name;
+    private final int productCount;
+    private final double minPrice;
+    private final double maxPrice;
+
+    public CategorySummary(int categoryId, String name, int productCount, double minPrice, double maxPrice) {
+        this.categoryId = categoryId;
+        this.name = name;
+        this.productCount = productCount;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+    }
+
+    // Getters only (immutable snapshot)
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getProductCount() {
+        return productCount;
+    }
+
+    // Both prices are 0 when the category is empty
+    public double getMinPrice() {
+        return minPrice;
+    }
+
+    public double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public boolean isEmpty() {
+        return productCount <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CategorySummary{" +
+                "categoryId=" + categoryId +
+                ", name='" + name + '\'' +
+                ", productCount=" + productCount +
+                ", minPrice=" + minPrice +
+                ", maxPrice=" + maxPrice +
+                '}';
+    }
+}
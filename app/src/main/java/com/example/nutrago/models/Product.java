@@ -6,8 +6,13 @@ public class Product {
     private String description;
     private double price;
     private int imageResId;
+    private String imagePath; // stored image key: a bundled drawable name or a file in getFilesDir()
+    private String detailImagePath; // smaller copies made at import time, null if none
+    private String listImagePath;
+    private String thumbnailPath;
     private int categoryId; // New field for category reference
     private boolean isInCart;
+    private boolean descriptionTruncated; // list rows only carry the start of the description
 
     // Constructor without ID and categoryId (for simple products)
     public Product(String name, String description, double price, int imageResId) {
@@ -72,6 +77,23 @@ public class Product {
         return imageResId;
     }
 
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    // Each size falls back to the original when no smaller copy was stored
+    public String getDetailImagePath() {
+        return detailImagePath != null ? detailImagePath : imagePath;
+    }
+
+    public String getListImagePath() {
+        return listImagePath != null ? listImagePath : imagePath;
+    }
+
+    public String getThumbnailPath() {
+        return thumbnailPath != null ? thumbnailPath : imagePath;
+    }
+
     public int getCategoryId() {
         return categoryId;
     }
@@ -80,6 +102,11 @@ public class Product {
         return isInCart;
     }
 
+    // True for list rows whose description was cut; read the full product before showing or editing it
+    public boolean isDescriptionTruncated() {
+        return descriptionTruncated;
+    }
+
     // Setters
     public void setId(int id) {
         this.id = id;
@@ -101,6 +128,22 @@ public class Product {
         this.imageResId = imageResId;
     }
 
+    public void setImagePath(String imagePath) {
+        this.imagePath = imagePath;
+    }
+
+    public void setDetailImagePath(String detailImagePath) {
+        this.detailImagePath = detailImagePath;
+    }
+
+    public void setListImagePath(String listImagePath) {
+        this.listImagePath = listImagePath;
+    }
+
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
+    }
+
     public void setCategoryId(int categoryId) {
         this.categoryId = categoryId;
     }
@@ -109,6 +152,10 @@ public class Product {
         isInCart = inCart;
     }
 
+    public void setDescriptionTruncated(boolean descriptionTruncated) {
+        this.descriptionTruncated = descriptionTruncated;
+    }
+
     @Override
     public String toString() {
         return "Product{" +
@@ -0,0 +1,30 @@
+package com.example.nutrago.models;
+
+// Everything the product details screen shows, read in one joined query
+public class ProductDetail {
+    private final Product product;
+    private final String categoryName;
+
+    public ProductDetail(Product product, String categoryName) {
+        this.product = product;
+        this.categoryName = categoryName;
+    }
+
+    // Getters only (immutable snapshot)
+    public Product getProduct() {
+        return product;
+    }
+
+    // null when the product has no (known) category
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductDetail{" +
+                "product=" + product +
+                ", categoryName='" + categoryName + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.nutrago.models;
+
+/**
+ * Stored files for one product image: the original plus smaller copies made at import time.
+ * Bundled images (drawable names) use the same key for every size.
+ */
+public class ProductImage {
+    private final String originalPath;
+    private final String detailPath;
+    private final String listPath;
+    private final String thumbnailPath;
+
+    public ProductImage(String originalPath, String detailPath, String listPath, String thumbnailPath) {
+        this.originalPath = originalPath;
+        this.detailPath = detailPath;
+        this.listPath = listPath;
+        this.thumbnailPath = thumbnailPath;
+    }
+
+    // Single key for every size (bundled drawables, or files imported before variants existed)
+    public static ProductImage single(String imagePath) {
+        return new ProductImage(imagePath, imagePath, imagePath, imagePath);
+    }
+
+    // Getters only (read-only data)
+    public String getOriginalPath() {
+        return originalPath;
+    }
+
+    public String getDetailPath() {
+        return detailPath;
+    }
+
+    public String getListPath() {
+        return listPath;
+    }
+
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductImage{" +
+                "originalPath='" + originalPath + '\'' +
+                ", detailPath='" + detailPath + '\'' +
+                ", listPath='" + listPath + '\'' +
+                ", thumbnailPath='" + thumbnailPath + '\'' +
+                '}';
+    }
+}
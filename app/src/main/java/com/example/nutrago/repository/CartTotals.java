@@ -0,0 +1,55 @@
+package com.example.nutrago.repository;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.nutrago.models.CartSummary;
+
+/**
+ * Running cart total and unit count kept in memory.
+ * Cart writes apply their delta here instead of re-reading the cart; the
+ * value is reconciled against one SUM(price * quantity) query when the cart
+ * screen opens, which also wipes out any floating point drift.
+ */
+public class CartTotals {
+
+    private double total;
+    private int itemCount;
+    private final MutableLiveData<CartSummary> summary = new MutableLiveData<>(new CartSummary(0, 0));
+
+    // units may be negative (decrement / remove)
+    public synchronized void add(double unitPrice, int units) {
+        total += unitPrice * units;
+        itemCount += units;
+        if (itemCount <= 0) {
+            itemCount = 0;
+            total = 0;
+        }
+        publish();
+    }
+
+    public synchronized void clear() {
+        total = 0;
+        itemCount = 0;
+        publish();
+    }
+
+    public synchronized void reconcile(CartSummary fromDatabase) {
+        if (fromDatabase == null) return;
+        total = fromDatabase.getTotal();
+        itemCount = fromDatabase.getItemCount();
+        publish();
+    }
+
+    public synchronized CartSummary getSnapshot() {
+        return new CartSummary(total, itemCount);
+    }
+
+    public LiveData<CartSummary> getSummary() {
+        return summary;
+    }
+
+    private void publish() {
+        summary.postValue(new CartSummary(total, itemCount));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.nutrago.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Add-to-cart taps that haven't reached SQLite yet, as product id -> units to add.
+ * Repeated taps on the same product fold into one entry, so a burst of taps is
+ * written as one increment per product in a single transaction.
+ */
+public class CartWriteBuffer {
+
+    private Map<Integer, Integer> pendingDeltas = new HashMap<>();
+
+    // Returns true if the buffer was empty, i.e. a flush needs to be scheduled
+    public synchronized boolean add(int productId, int units) {
+        boolean wasEmpty = pendingDeltas.isEmpty();
+        Integer current = pendingDeltas.get(productId);
+        int combined = (current == null ? 0 : current) + units;
+        if (combined == 0) {
+            pendingDeltas.remove(productId);
+        } else {
+            pendingDeltas.put(productId, combined);
+        }
+        return wasEmpty;
+    }
+
+    // Hands the pending deltas to the flusher and starts a fresh buffer
+    public synchronized Map<Integer, Integer> drain() {
+        Map<Integer, Integer> drained = pendingDeltas;
+        pendingDeltas = new HashMap<>();
+        return drained;
+    }
+
+    // Pending units for this product, dropped (e.g. the product was deleted)
+    public synchronized int discard(int productId) {
+        Integer removed = pendingDeltas.remove(productId);
+        return removed == null ? 0 : removed;
+    }
+
+    public synchronized void clear() {
+        pendingDeltas.clear();
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingDeltas.isEmpty();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.nutrago.repository;
+
+import com.example.nutrago.models.Product;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Products kept in memory by id and by category (0 = "All"), in the same
+ * (category_id, id) order the keyset pages use.
+ * Each category list is a prefix of the real one: pages are appended as they are
+ * read, and once a short page comes back the list is complete and every later
+ * page or category switch is answered without SQL.
+ * Writes go through {@link #put(Product)} and {@link #remove(int)} so the cache
+ * never needs a reload after add, edit or delete.
+ *
+ * Only touched on the repository's database thread; the counters may be read anywhere.
+ */
+public class CatalogCache {
+
+    private static class CategoryEntry {
+        final List<Product> rows = new ArrayList<>();
+        boolean complete;
+    }
+
+    private final Map<Integer, Product> productsById = new HashMap<>();
+    private final Map<Integer, CategoryEntry> categories = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // null = miss (ask the database)
+    public Product getProduct(int productId) {
+        Product product = productsById.get(productId);
+        count(product != null);
+        return product;
+    }
+
+    /**
+     * Rows after the (afterCategoryId, afterId) key, or null if the cached prefix
+     * can't answer the whole page.
+     */
+    public List<Product> getPage(int categoryId, int afterCategoryId, int afterId, int limit) {
+        CategoryEntry entry = categories.get(categoryId);
+        if (entry == null) {
+            count(false);
+            return null;
+        }
+        int start = firstIndexAfter(entry.rows, afterCategoryId, afterId);
+        int available = entry.rows.size() - start;
+        if (available < limit && !entry.complete) {
+            count(false);
+            return null;
+        }
+        count(true);
+        return new ArrayList<>(entry.rows.subList(start, start + Math.min(limit, available)));
+    }
+
+    // Stores a page read from the database if it continues the cached prefix
+    public void putPage(int categoryId, int afterCategoryId, int afterId, int limit, List<Product> page) {
+        if (page == null) return;
+        CategoryEntry entry = categories.get(categoryId);
+        if (entry == null) {
+            if (afterCategoryId != 0 || afterId != 0) return; // not the first page, leave a gap-free prefix
+            entry = new CategoryEntry();
+            categories.put(categoryId, entry);
+        } else if (entry.complete || firstIndexAfter(entry.rows, afterCategoryId, afterId) != entry.rows.size()) {
+            return; // already covered
+        }
+        for (Product product : page) {
+            entry.rows.add(product);
+            productsById.put(product.getId(), product);
+        }
+        entry.complete = page.size() < limit;
+    }
+
+    // Write-through for add and edit: the row moves to wherever its key now belongs
+    public void put(Product product) {
+        removeFromCategories(product.getId());
+        productsById.put(product.getId(), product);
+        insertInto(categories.get(0), product);
+        insertInto(categories.get(product.getCategoryId()), product);
+    }
+
+    public void remove(int productId) {
+        removeFromCategories(productId);
+        productsById.remove(productId);
+    }
+
+    public void invalidateAll() {
+        productsById.clear();
+        categories.clear();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        long h = hits.get();
+        long m = misses.get();
+        long total = h + m;
+        return "CatalogCache{hits=" + h + ", misses=" + m
+                + ", hitRate=" + (total == 0 ? 0 : (100 * h / total)) + "%}";
+    }
+
+    private void count(boolean hit) {
+        (hit ? hits : misses).incrementAndGet();
+    }
+
+    private void insertInto(CategoryEntry entry, Product product) {
+        if (entry == null) return;
+        int index = firstIndexAfter(entry.rows, product.getCategoryId(), product.getId());
+        // Past the end of an incomplete prefix the row belongs to a page not read yet
+        if (index == entry.rows.size() && !entry.complete) return;
+        entry.rows.add(index, product);
+    }
+
+    private void removeFromCategories(int productId) {
+        for (CategoryEntry entry : categories.values()) {
+            entry.rows.removeIf(row -> row.getId() == productId);
+        }
+    }
+
+    // Binary search for the first row whose (category_id, id) is after the key
+    private static int firstIndexAfter(List<Product> rows, int categoryId, int id) {
+        int low = 0;
+        int high = rows.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Product row = rows.get(mid);
+            if (compareKeys(row.getCategoryId(), row.getId(), categoryId, id) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int compareKeys(int categoryA, int idA, int categoryB, int idB) {
+        if (categoryA != categoryB) return Integer.compare(categoryA, categoryB);
+        return Integer.compare(idA, idB);
+    }
+}
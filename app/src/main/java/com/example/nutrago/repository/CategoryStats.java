@@ -0,0 +1,107 @@
+package com.example.nutrago.repository;
+
+import com.example.nutrago.models.CategorySummary;
+import com.example.nutrago.models.Product;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Product count and price range per category, loaded once from the grouped summary
+ * query and then kept in step with product writes, so the category chips never
+ * trigger a reload. A count moves by one per add, move or delete. A price range can
+ * only grow from a new row; when the row holding the current min or max goes away,
+ * {@link #removed(Product)} says so and that one category's range is worked out again.
+ *
+ * Only touched on the repository's database thread.
+ */
+public class CategoryStats {
+
+    private static class Entry {
+        final int categoryId;
+        final String name;
+        int count;
+        double minPrice;
+        double maxPrice;
+
+        Entry(CategorySummary summary) {
+            categoryId = summary.getCategoryId();
+            name = summary.getName();
+            count = summary.getProductCount();
+            minPrice = summary.getMinPrice();
+            maxPrice = summary.getMaxPrice();
+        }
+    }
+
+    // In the order the summary query returned them (category name)
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>();
+    private boolean loaded;
+
+    public void load(List<CategorySummary> summaries) {
+        entries.clear();
+        for (CategorySummary summary : summaries) {
+            entries.put(summary.getCategoryId(), new Entry(summary));
+        }
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void added(Product product) {
+        Entry entry = entries.get(product.getCategoryId());
+        if (entry == null) return;
+        double price = product.getPrice();
+        if (entry.count == 0) {
+            entry.minPrice = price;
+            entry.maxPrice = price;
+        } else {
+            entry.minPrice = Math.min(entry.minPrice, price);
+            entry.maxPrice = Math.max(entry.maxPrice, price);
+        }
+        entry.count++;
+    }
+
+    // Returns true if the product held the category's min or max price and the range must be re-read
+    public boolean removed(Product product) {
+        Entry entry = entries.get(product.getCategoryId());
+        if (entry == null || entry.count == 0) return false;
+        entry.count--;
+        if (entry.count == 0) {
+            entry.minPrice = 0;
+            entry.maxPrice = 0;
+            return false;
+        }
+        double price = product.getPrice();
+        return price <= entry.minPrice || price >= entry.maxPrice;
+    }
+
+    // Replaces one category with a freshly read summary
+    public void replace(CategorySummary summary) {
+        Entry entry = entries.get(summary.getCategoryId());
+        if (entry == null) return;
+        entry.count = summary.getProductCount();
+        entry.minPrice = summary.getMinPrice();
+        entry.maxPrice = summary.getMaxPrice();
+    }
+
+    // Replaces one category's price range, worked out again after its min or max row went away
+    public void setPriceRange(int categoryId, double minPrice, double maxPrice) {
+        Entry entry = entries.get(categoryId);
+        if (entry == null || entry.count == 0) return;
+        entry.minPrice = minPrice;
+        entry.maxPrice = maxPrice;
+    }
+
+    public List<CategorySummary> snapshot() {
+        List<CategorySummary> summaries = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            summaries.add(new CategorySummary(entry.categoryId, entry.name, entry.count,
+                    entry.minPrice, entry.maxPrice));
+        }
+        return summaries;
+    }
+}
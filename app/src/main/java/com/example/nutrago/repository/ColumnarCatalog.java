@@ -0,0 +1,328 @@
+package com.example.nutrago.repository;
+
+import java.util.Arrays;
+
+/**
+ * The whole catalog as parallel primitive columns, for scans over 100k+ products without
+ * one Product (and its boxed fields and strings) per row. Row r is ids[r], categoryIds[r],
+ * prices[r] and the name at nameOffsets[nameRefs[r]] in one shared char pool; equal names
+ * are stored once (interned by a 64-bit hash of their characters, reference counted).
+ *
+ * Edits are O(1) amortized: a put appends a row and marks the product's old row removed
+ * (a tombstone), a remove only marks. Once half the rows are dead they are compacted away,
+ * and the name pool is rewritten with only the names still referenced. Rows are therefore
+ * in no particular order; a category is read by scanning the category column.
+ *
+ * Iteration and filtering allocate nothing per row: callers pass a {@link RowVisitor} or
+ * {@link RowFilter} that sees the primitive columns. All methods are synchronized and a
+ * visitor runs under the lock, so keep it short and don't edit the catalog from it. Like
+ * {@link TrigramIndex}, a fresh catalog is filled off the main thread with
+ * {@link #startFill()}, {@link #putIfAbsent} and {@link #finishFill()} while edits keep
+ * arriving, then swapped in.
+ */
+public class ColumnarCatalog {
+
+    // Return false to stop the scan
+    public interface RowVisitor {
+        boolean visit(int row, int id, int categoryId, double price);
+    }
+
+    public interface RowFilter {
+        boolean accept(int id, int categoryId, double price);
+    }
+
+    public static final int NO_ROW = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int INITIAL_NAME_CHARS = 4096;
+    private static final int REMOVED_ID = -2; // removed before a background fill reached it
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Rows
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] categoryIds = new int[INITIAL_CAPACITY];
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private int[] nameRefs = new int[INITIAL_CAPACITY];
+    private boolean[] removed = new boolean[INITIAL_CAPACITY];
+    private int rowCount;
+    private int removedCount;
+    private final LongIntMap rowsById = new LongIntMap();
+
+    // Name table: entry e is nameChars[nameOffsets[e] .. + nameLengths[e]]
+    private char[] nameChars = new char[INITIAL_NAME_CHARS];
+    private int nameCharCount;
+    private int[] nameOffsets = new int[INITIAL_CAPACITY];
+    private int[] nameLengths = new int[INITIAL_CAPACITY];
+    private int[] nameUses = new int[INITIAL_CAPACITY];
+    private int nameCount;
+    private int deadNameChars;
+    private final LongIntMap namesByHash = new LongIntMap();
+
+    private boolean filling;
+
+    // From here to finishFill, removed ids are remembered for putIfAbsent
+    public synchronized void startFill() {
+        filling = true;
+    }
+
+    // The fill has read every row, so the removal markers have done their job
+    public synchronized void finishFill() {
+        filling = false;
+        long[] markers = new long[rowsById.size];
+        int count = 0;
+        for (int i = 0; i < rowsById.keys.length; i++) {
+            if (rowsById.keys[i] != LongIntMap.EMPTY && rowsById.values[i] == REMOVED_ID) {
+                markers[count++] = rowsById.keys[i];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            rowsById.remove(markers[i]);
+        }
+    }
+
+    /**
+     * For filling the catalog from a database read while edits keep arriving: a product that
+     * was already put (newer data) or removed since the read is left alone.
+     */
+    public synchronized void putIfAbsent(int productId, int categoryId, double price, String name) {
+        if (rowsById.get(productId) == NO_ROW) {
+            put(productId, categoryId, price, name);
+        }
+    }
+
+    public synchronized void put(int productId, int categoryId, double price, String name) {
+        int oldRow = rowsById.get(productId);
+        if (oldRow >= 0 && !removed[oldRow]) {
+            markRemoved(oldRow);
+        }
+
+        int row = rowCount++;
+        ensureRowCapacity(rowCount);
+        ids[row] = productId;
+        categoryIds[row] = categoryId;
+        prices[row] = price;
+        nameRefs[row] = internName(name == null ? "" : name);
+        removed[row] = false;
+        rowsById.put(productId, row);
+        compactIfNeeded();
+    }
+
+    public synchronized void remove(int productId) {
+        int row = rowsById.get(productId);
+        if (row >= 0 && !removed[row]) {
+            markRemoved(row);
+        }
+        if (filling) {
+            rowsById.put(productId, REMOVED_ID);
+        } else {
+            rowsById.remove(productId);
+        }
+        compactIfNeeded();
+    }
+
+    public synchronized int size() {
+        return rowCount - removedCount;
+    }
+
+    // Row of the product, or NO_ROW; valid until the next edit
+    public synchronized int rowOf(int productId) {
+        int row = rowsById.get(productId);
+        return row >= 0 ? row : NO_ROW;
+    }
+
+    /**
+     * Visits the live rows of the category (0 = all) until the visitor returns false.
+     * Returns how many rows were visited.
+     */
+    public synchronized int forEach(int categoryId, RowVisitor visitor) {
+        int visited = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (removed[row] || (categoryId != 0 && categoryIds[row] != categoryId)) continue;
+            visited++;
+            if (!visitor.visit(row, ids[row], categoryIds[row], prices[row])) break;
+        }
+        return visited;
+    }
+
+    /**
+     * Writes the ids of the category's live rows (0 = all) that the filter accepts into
+     * out and returns how many were written (at most out.length).
+     */
+    public synchronized int filter(int categoryId, RowFilter filter, int[] out) {
+        int found = 0;
+        for (int row = 0; row < rowCount && found < out.length; row++) {
+            if (removed[row] || (categoryId != 0 && categoryIds[row] != categoryId)) continue;
+            if (filter.accept(ids[row], categoryIds[row], prices[row])) {
+                out[found++] = ids[row];
+            }
+        }
+        return found;
+    }
+
+    // The name pool and a row's place in it, for reading names inside a visitor without a String
+    public synchronized char[] nameChars() {
+        return nameChars;
+    }
+
+    public synchronized int nameOffset(int row) {
+        return nameOffsets[nameRefs[row]];
+    }
+
+    public synchronized int nameLength(int row) {
+        return nameLengths[nameRefs[row]];
+    }
+
+    public synchronized String getName(int row) {
+        int name = nameRefs[row];
+        return new String(nameChars, nameOffsets[name], nameLengths[name]);
+    }
+
+    // Distinct names currently referenced
+    synchronized int nameCount() {
+        int live = 0;
+        for (int name = 0; name < nameCount; name++) {
+            if (nameUses[name] > 0) live++;
+        }
+        return live;
+    }
+
+    // Approximate heap held by the columns, the name table and the id lookup
+    public synchronized long estimatedBytes() {
+        return (long) ids.length * (4 + 4 + 8 + 4 + 1)
+                + (long) nameOffsets.length * (4 + 4 + 4)
+                + 2L * nameChars.length
+                + (long) (rowsById.keys.length + namesByHash.keys.length) * (8 + 4);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ColumnarCatalog{rows=" + size() + ", names=" + nameCount()
+                + ", ~" + (estimatedBytes() / 1024) + " KB}";
+    }
+
+    private void markRemoved(int row) {
+        removed[row] = true;
+        removedCount++;
+        releaseName(nameRefs[row]);
+    }
+
+    // Entry of an equal name already in the table, or a new one appended to the pool
+    private int internName(String name) {
+        int length = name.length();
+        if (nameCharCount + length > nameChars.length) {
+            nameChars = Arrays.copyOf(nameChars, Math.max(nameCharCount + length, nameChars.length * 2));
+        }
+        // Copied to the end of the pool first; kept there only if the name is new
+        name.getChars(0, length, nameChars, nameCharCount);
+        long hash = hashOf(nameChars, nameCharCount, length);
+        int existing = namesByHash.get(hash);
+        if (existing >= 0 && sameChars(existing, nameCharCount, length)) {
+            if (nameUses[existing]++ == 0) deadNameChars -= length;
+            return existing;
+        }
+
+        int entry = nameCount++;
+        ensureNameCapacity(nameCount);
+        nameOffsets[entry] = nameCharCount;
+        nameLengths[entry] = length;
+        nameUses[entry] = 1;
+        nameCharCount += length;
+        // A different name with the same hash keeps its entry; this one just isn't shared
+        if (existing < 0) namesByHash.put(hash, entry);
+        return entry;
+    }
+
+    private void releaseName(int entry) {
+        if (--nameUses[entry] == 0) {
+            deadNameChars += nameLengths[entry];
+        }
+    }
+
+    private boolean sameChars(int entry, int offset, int length) {
+        if (nameLengths[entry] != length) return false;
+        int start = nameOffsets[entry];
+        for (int i = 0; i < length; i++) {
+            if (nameChars[start + i] != nameChars[offset + i]) return false;
+        }
+        return true;
+    }
+
+    // FNV-1a over the characters; never LongIntMap.EMPTY
+    private static long hashOf(char[] chars, int offset, int length) {
+        long hash = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ chars[i]) * FNV_PRIME;
+        }
+        return hash == LongIntMap.EMPTY ? 0 : hash;
+    }
+
+    // Drops dead rows once half of them are dead, or unused names once they fill half the
+    // pool: live rows move down in order and the names they use are copied to a new table
+    private void compactIfNeeded() {
+        boolean rowsDead = removedCount >= INITIAL_CAPACITY && removedCount * 2 >= rowCount;
+        boolean namesDead = deadNameChars >= INITIAL_NAME_CHARS && deadNameChars * 2 >= nameCharCount;
+        if (!rowsDead && !namesDead) return;
+
+        int[] newNames = new int[nameCount];
+        Arrays.fill(newNames, NO_ROW);
+        char[] newChars = new char[Math.max(INITIAL_NAME_CHARS, nameCharCount - deadNameChars)];
+        int[] newOffsets = new int[nameOffsets.length];
+        int[] newLengths = new int[nameOffsets.length];
+        int[] newUses = new int[nameOffsets.length];
+        int newCharCount = 0;
+        int newNameCount = 0;
+        namesByHash.clear();
+
+        int live = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (removed[row]) continue;
+            int name = nameRefs[row];
+            if (newNames[name] == NO_ROW) {
+                int length = nameLengths[name];
+                System.arraycopy(nameChars, nameOffsets[name], newChars, newCharCount, length);
+                newNames[name] = newNameCount;
+                newOffsets[newNameCount] = newCharCount;
+                newLengths[newNameCount] = length;
+                newUses[newNameCount] = nameUses[name];
+                namesByHash.put(hashOf(newChars, newCharCount, length), newNameCount);
+                newNameCount++;
+                newCharCount += length;
+            }
+            ids[live] = ids[row];
+            categoryIds[live] = categoryIds[row];
+            prices[live] = prices[row];
+            nameRefs[live] = newNames[name];
+            rowsById.put(ids[live], live);
+            live++;
+        }
+        Arrays.fill(removed, 0, rowCount, false);
+        rowCount = live;
+        removedCount = 0;
+        nameChars = newChars;
+        nameCharCount = newCharCount;
+        nameOffsets = newOffsets;
+        nameLengths = newLengths;
+        nameUses = newUses;
+        nameCount = newNameCount;
+        deadNameChars = 0;
+    }
+
+    private void ensureRowCapacity(int needed) {
+        if (needed <= ids.length) return;
+        int capacity = Math.max(needed, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        nameRefs = Arrays.copyOf(nameRefs, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+    }
+
+    private void ensureNameCapacity(int needed) {
+        if (needed <= nameOffsets.length) return;
+        int capacity = Math.max(needed, nameOffsets.length * 2);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        nameUses = Arrays.copyOf(nameUses, capacity);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.nutrago.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.LiveData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Table-level change notifications for the data layer.
+ * Writes report the tables they touched with {@link #notifyChanged(String...)};
+ * each table has a version number that goes up on every change, and only observers
+ * registered for one of the changed tables are called. Everything except
+ * notifyChanged runs on the main thread.
+ */
+public class InvalidationTracker {
+
+    public static final String TABLE_PRODUCTS = "products";
+    public static final String TABLE_CATEGORIES = "categories";
+    public static final String TABLE_CART = "cart";
+
+    public interface Observer {
+        void onInvalidated(Set<String> tables);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Integer> versions = new HashMap<>();
+    private final Map<Observer, Set<String>> observers = new LinkedHashMap<>();
+
+    public void addObserver(Observer observer, String... tables) {
+        observers.put(observer, new HashSet<>(Arrays.asList(tables)));
+    }
+
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    // Sum of the tables' versions; changes whenever any of them changes
+    public int getVersion(String... tables) {
+        int version = 0;
+        for (String table : tables) {
+            Integer tableVersion = versions.get(table);
+            if (tableVersion != null) version += tableVersion;
+        }
+        return version;
+    }
+
+    // Safe to call from the database thread, right after the write committed
+    public void notifyChanged(String... tables) {
+        final Set<String> changed = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(tables)));
+        mainHandler.post(() -> dispatch(changed));
+    }
+
+    /**
+     * A version number for the given tables as LiveData. It emits the current version
+     * to every new observer and a new one after each change to those tables, so a
+     * screen can subscribe once and reload only when its data actually changed.
+     */
+    public LiveData<Integer> createVersionLiveData(String... tables) {
+        return new VersionLiveData(tables);
+    }
+
+    private void dispatch(Set<String> changed) {
+        for (String table : changed) {
+            Integer version = versions.get(table);
+            versions.put(table, version == null ? 1 : version + 1);
+        }
+        // Snapshot: an observer may unregister itself while being notified
+        List<Map.Entry<Observer, Set<String>>> snapshot = new ArrayList<>(observers.entrySet());
+        for (Map.Entry<Observer, Set<String>> entry : snapshot) {
+            if (!Collections.disjoint(entry.getValue(), changed) && observers.containsKey(entry.getKey())) {
+                entry.getKey().onInvalidated(changed);
+            }
+        }
+    }
+
+    private class VersionLiveData extends LiveData<Integer> implements Observer {
+        private final String[] tables;
+
+        VersionLiveData(String[] tables) {
+            super(getVersion(tables));
+            this.tables = tables;
+        }
+
+        @Override
+        protected void onActive() {
+            addObserver(this, tables);
+            // Catch up on changes made while nobody was watching
+            int current = getVersion(tables);
+            Integer delivered = getValue();
+            if (delivered == null || delivered != current) {
+                setValue(current);
+            }
+        }
+
+        @Override
+        protected void onInactive() {
+            removeObserver(this);
+        }
+
+        @Override
+        public void onInvalidated(Set<String> changed) {
+            setValue(getVersion(tables));
+        }
+    }
+}
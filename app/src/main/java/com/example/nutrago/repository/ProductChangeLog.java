@@ -0,0 +1,55 @@
+package com.example.nutrago.repository;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Which products changed since a given point, so a screen holding loaded rows can patch
+ * just those instead of reading them all again. Every add, edit and delete records its
+ * product id under the next sequence number. A bulk change (an import) records no ids and
+ * instead makes everything before it unknown, as does falling out of the last
+ * {@code capacity} changes; asking about an unknown point answers null ("reload").
+ */
+public class ProductChangeLog {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final int[] productIds; // ring: the change with sequence s is at (s - 1) % capacity
+    private long seq; // latest change
+    private long knownAfter; // changes after this one are all still in the ring
+
+    public ProductChangeLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    ProductChangeLog(int capacity) {
+        productIds = new int[capacity];
+    }
+
+    public synchronized long getSeq() {
+        return seq;
+    }
+
+    public synchronized void recordChange(int productId) {
+        seq++;
+        productIds[(int) ((seq - 1) % productIds.length)] = productId;
+        if (seq - knownAfter > productIds.length) {
+            knownAfter = seq - productIds.length;
+        }
+    }
+
+    public synchronized void recordBulkChange() {
+        seq++;
+        knownAfter = seq;
+    }
+
+    // Ids changed after the given sequence number, oldest first; null if no longer known
+    public synchronized Set<Integer> changedSince(long since) {
+        if (since < knownAfter) return null;
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (long s = since + 1; s <= seq; s++) {
+            ids.add(productIds[(int) ((s - 1) % productIds.length)]);
+        }
+        return ids;
+    }
+}
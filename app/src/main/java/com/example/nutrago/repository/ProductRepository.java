@@ -0,0 +1,808 @@
+package com.example.nutrago.repository;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.nutrago.database.CatalogImporter;
+import com.example.nutrago.database.DatabaseHelper;
+import com.example.nutrago.models.CartItem;
+import com.example.nutrago.models.CartSummary;
+import com.example.nutrago.models.Category;
+import com.example.nutrago.models.CategorySummary;
+import com.example.nutrago.models.Product;
+import com.example.nutrago.models.ProductDetail;
+import com.example.nutrago.models.ProductImage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single entry point for screens that need catalog or cart data.
+ * Every DatabaseHelper call runs on a dedicated background thread and the
+ * result is delivered back on the main thread, so no query ever blocks the UI.
+ */
+public class ProductRepository {
+
+    // Result delivered on the main thread
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    // Bulk catalog import, reported on the main thread
+    public interface CatalogImportListener {
+        void onProgress(int imported, int rejected);
+
+        void onFinished(CatalogImporter.Result result);
+
+        void onFailed(Exception error);
+    }
+
+    // Work executed on the database thread
+    private interface Task<T> {
+        T run(DatabaseHelper dbHelper);
+    }
+
+    private static final String TAG = "ProductRepository";
+
+    // Add-to-cart taps within this window are written together
+    private static final long CART_FLUSH_DELAY_MS = 300;
+    // Details of the products last looked at or paused on in the gallery
+    private static final int DETAIL_CACHE_SIZE = 64;
+    // Visible rows are prefetched in one IN (...) query; more than a screenful is never needed
+    private static final int MAX_DETAIL_PREFETCH = 50;
+    // Instant search runs on the database thread between page loads, so it gets a hard time budget
+    private static final long INSTANT_SEARCH_BUDGET_NANOS = 8_000_000L;
+
+    private static volatile ProductRepository instance;
+
+    private final Context context;
+    private final DatabaseHelper dbHelper;
+    private final ExecutorService dbExecutor;
+    // Bulk imports get their own thread so reads keep flowing (WAL) while a big file loads
+    private final ExecutorService importExecutor;
+    private final Handler mainHandler;
+    private final CartTotals cartTotals = new CartTotals();
+    private final CatalogCache catalogCache = new CatalogCache(); // database thread only
+    private final CategoryStats categoryStats = new CategoryStats(); // database thread only
+    // Filled on the database thread, read from the main thread to draw the details screen's first frame
+    private final LruCache<Integer, ProductDetail> detailCache = new LruCache<>(DETAIL_CACHE_SIZE);
+    private final InvalidationTracker invalidationTracker = new InvalidationTracker();
+    private final CartWriteBuffer cartWriteBuffer = new CartWriteBuffer();
+    private final ProductChangeLog productChangeLog = new ProductChangeLog();
+    private final Runnable scheduledCartFlush = this::flushCartWrites;
+    private CancellationSignal pendingSearch; // main thread only
+    // Instant searches still queued when a newer one arrives are skipped
+    private final AtomicInteger instantSearchGeneration = new AtomicInteger();
+    // In-memory catalog columns and typo-tolerant name index: usable once built, edits go to
+    // both the live and the building copy while a rebuild runs
+    private volatile ColumnarCatalog catalog;
+    private volatile ColumnarCatalog buildingCatalog;
+    private volatile TrigramIndex nameIndex;
+    private volatile TrigramIndex buildingNameIndex;
+
+    // Cart lines, re-read only when the cart or products tables changed
+    private final QueryLiveData<List<CartItem>> cartItems = new QueryLiveData<>(db -> {
+        applyBufferedCartWrites(db);
+        return db.getCartItems();
+    }, InvalidationTracker.TABLE_CART, InvalidationTracker.TABLE_PRODUCTS);
+
+    private final QueryLiveData<List<Category>> categories = new QueryLiveData<>(
+            DatabaseHelper::getAllCategories, InvalidationTracker.TABLE_CATEGORIES);
+
+    // Counts and price ranges per category, posted from the database thread after every product write
+    private final MutableLiveData<List<CategorySummary>> categorySummaries = new MutableLiveData<>();
+    private boolean categorySummariesRequested; // main thread only
+
+    public static ProductRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ProductRepository.class) {
+                if (instance == null) {
+                    instance = new ProductRepository(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ProductRepository(Context context) {
+        this.context = context;
+        this.dbHelper = DatabaseHelper.getInstance(context);
+        // A single thread keeps writes ordered (add then reload always sees the add)
+        this.dbExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nutrago-db");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        this.importExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nutrago-catalog-import");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    // Opens and warms the shared database on the database thread, ahead of the first screen,
+    // then builds the in-memory catalog columns and instant-search index in the background
+    public void warmUp() {
+        execute(db -> {
+            db.warmUp();
+            return null;
+        }, null);
+        rebuildCatalogIndexes();
+    }
+
+    /**
+     * Reads every product's id, category, price and name off the database thread (WAL),
+     * column by column with no Product per row, into fresh catalog columns and a fresh
+     * trigram index, and swaps both in. The old columns are dropped right away, since after
+     * an import they no longer match the table; the old name index keeps answering searches.
+     */
+    private void rebuildCatalogIndexes() {
+        catalog = null;
+        importExecutor.execute(() -> {
+            ColumnarCatalog columns = new ColumnarCatalog();
+            TrigramIndex index = new TrigramIndex();
+            columns.startFill();
+            index.startFill();
+            // Before the read, so no edit falls in between
+            buildingCatalog = columns;
+            buildingNameIndex = index;
+            boolean complete = dbHelper.readCatalogColumns((id, categoryId, price, name) -> {
+                columns.putIfAbsent(id, categoryId, price, name);
+                index.putIfAbsent(id, categoryId, name);
+            });
+            columns.finishFill();
+            index.finishFill();
+            // Price ranges must not come from a partial read; searching a partial index is fine
+            catalog = complete ? columns : null;
+            nameIndex = index;
+            buildingCatalog = null;
+            buildingNameIndex = null;
+            Log.i(TAG, "catalog indexes built: " + columns + ", " + index.size() + " names");
+        });
+    }
+
+    private void indexProduct(Product product) {
+        ColumnarCatalog columns = catalog;
+        if (columns != null) {
+            columns.put(product.getId(), product.getCategoryId(), product.getPrice(), product.getName());
+        }
+        ColumnarCatalog buildingColumns = buildingCatalog;
+        if (buildingColumns != null && buildingColumns != columns) {
+            buildingColumns.put(product.getId(), product.getCategoryId(), product.getPrice(), product.getName());
+        }
+        TrigramIndex index = nameIndex;
+        if (index != null) index.put(product.getId(), product.getCategoryId(), product.getName());
+        TrigramIndex building = buildingNameIndex;
+        if (building != null && building != index) {
+            building.put(product.getId(), product.getCategoryId(), product.getName());
+        }
+    }
+
+    private void unindexProduct(int productId) {
+        ColumnarCatalog columns = catalog;
+        if (columns != null) columns.remove(productId);
+        ColumnarCatalog buildingColumns = buildingCatalog;
+        if (buildingColumns != null && buildingColumns != columns) buildingColumns.remove(productId);
+        TrigramIndex index = nameIndex;
+        if (index != null) index.remove(productId);
+        TrigramIndex building = buildingNameIndex;
+        if (building != null && building != index) building.remove(productId);
+    }
+
+    /**
+     * Query result as LiveData. The query runs when the first observer arrives, again
+     * whenever one of its tables changes while observed, and on re-activation only if
+     * a change happened in the meantime, so switching tabs doesn't re-read anything.
+     */
+    private class QueryLiveData<T> extends MutableLiveData<T> implements InvalidationTracker.Observer {
+        private final Task<T> query;
+        private final String[] tables;
+        private int loadedVersion = -1;
+
+        QueryLiveData(Task<T> query, String... tables) {
+            this.query = query;
+            this.tables = tables;
+        }
+
+        @Override
+        protected void onActive() {
+            invalidationTracker.addObserver(this, tables);
+            if (loadedVersion != invalidationTracker.getVersion(tables)) {
+                load();
+            }
+        }
+
+        @Override
+        protected void onInactive() {
+            invalidationTracker.removeObserver(this);
+        }
+
+        @Override
+        public void onInvalidated(Set<String> changedTables) {
+            load();
+        }
+
+        private void load() {
+            final int version = invalidationTracker.getVersion(tables);
+            execute(query, result -> {
+                loadedVersion = version;
+                setValue(result);
+            });
+        }
+    }
+
+    private <T> void execute(Task<T> task, Callback<T> callback) {
+        dbExecutor.execute(() -> {
+            T result;
+            try {
+                result = task.run(dbHelper);
+            } catch (Exception e) {
+                e.printStackTrace();
+                result = null;
+            }
+            if (callback != null) {
+                final T delivered = result;
+                mainHandler.post(() -> callback.onResult(delivered));
+            }
+        });
+    }
+
+    // Category operations
+
+    public void getAllCategories(Callback<List<Category>> callback) {
+        execute(DatabaseHelper::getAllCategories, callback);
+    }
+
+    // Categories that reload themselves when the categories table changes
+    public LiveData<List<Category>> getCategories() {
+        return categories;
+    }
+
+    /**
+     * Every category with its product count and price range. Read in one grouped query
+     * on first use; after that each add, edit, move or delete adjusts the numbers in
+     * place (see {@link CategoryStats}) instead of re-running the query.
+     */
+    public LiveData<List<CategorySummary>> getCategorySummaries() {
+        if (!categorySummariesRequested) {
+            categorySummariesRequested = true;
+            execute(db -> {
+                loadCategoryStats(db);
+                return null;
+            }, null);
+        }
+        return categorySummaries;
+    }
+
+    private void loadCategoryStats(DatabaseHelper db) {
+        categoryStats.load(db.getCategorySummaries());
+        categorySummaries.postValue(categoryStats.snapshot());
+    }
+
+    // The row as it was before a write, needed only to take it out of its old category's numbers
+    private Product rowBeforeWrite(DatabaseHelper db, int productId) {
+        return categoryStats.isLoaded() ? db.getProductById(productId) : null;
+    }
+
+    // before is null for an add, after is null for a delete
+    private void updateCategoryStats(DatabaseHelper db, Product before, Product after) {
+        if (!categoryStats.isLoaded()) return;
+        if (before != null && after != null && before.getCategoryId() == after.getCategoryId()
+                && before.getPrice() == after.getPrice()) {
+            return; // name or image edit, the numbers don't move
+        }
+        boolean rangeLost = before != null && categoryStats.removed(before);
+        if (after != null) categoryStats.added(after);
+        if (rangeLost && !scanPriceRange(before.getCategoryId())) {
+            // The old min or max row is gone; the table already has the write, so re-read that category
+            CategorySummary summary = db.getCategorySummary(before.getCategoryId());
+            if (summary != null) categoryStats.replace(summary);
+        }
+        categorySummaries.postValue(categoryStats.snapshot());
+    }
+
+    // Works out a category's price range from the catalog columns, which already have the
+    // write; false while they are being (re)built
+    private boolean scanPriceRange(int categoryId) {
+        ColumnarCatalog columns = catalog;
+        if (columns == null) return false;
+        double[] range = {Double.MAX_VALUE, -Double.MAX_VALUE};
+        int rows = columns.forEach(categoryId, (row, id, rowCategoryId, price) -> {
+            if (price < range[0]) range[0] = price;
+            if (price > range[1]) range[1] = price;
+            return true;
+        });
+        if (rows > 0) categoryStats.setPriceRange(categoryId, range[0], range[1]);
+        return true;
+    }
+
+    // Product operations
+
+    /**
+     * Emits a new number whenever the products table changes (add, edit, delete).
+     * The paged product list subscribes to this instead of reloading on every resume.
+     */
+    public LiveData<Integer> getProductChanges() {
+        return invalidationTracker.createVersionLiveData(InvalidationTracker.TABLE_PRODUCTS);
+    }
+
+    // Position in the change log; rows read after taking it are at least this new
+    public long getProductChangeSeq() {
+        return productChangeLog.getSeq();
+    }
+
+    /**
+     * Products changed after the given change log position, by id: the current list row,
+     * or null for a deleted product. The callback gets null instead of a map when those
+     * changes are no longer known (an import ran, or too many changes since) and whatever
+     * was loaded has to be read again.
+     */
+    public void getProductChangesSince(long seq, Callback<Map<Integer, Product>> callback) {
+        execute(db -> {
+            Set<Integer> ids = productChangeLog.changedSince(seq);
+            if (ids == null) return null;
+            Map<Integer, Product> rows = new HashMap<>();
+            for (int id : ids) {
+                Product row = catalogCache.getProduct(id);
+                rows.put(id, row != null ? row : db.getProductListRow(id));
+            }
+            return rows;
+        }, callback);
+    }
+
+    // Reads below are answered from the catalog cache when it can; writes keep it current.
+
+    // Next page after the (afterCategoryId, afterId) key, see DatabaseHelper#getProductsPage
+    public void getProductsPage(int categoryId, int afterCategoryId, int afterId, int limit,
+                                Callback<List<Product>> callback) {
+        execute(db -> {
+            List<Product> cached = catalogCache.getPage(categoryId, afterCategoryId, afterId, limit);
+            if (cached != null) return cached;
+            List<Product> page = db.getProductsPage(categoryId, afterCategoryId, afterId, limit);
+            catalogCache.putPage(categoryId, afterCategoryId, afterId, limit, page);
+            return page;
+        }, callback);
+    }
+
+    /**
+     * Ranked full-text search (see DatabaseHelper#searchProducts). Starting a new search
+     * cancels the previous one, whether it is still queued or already running, and the
+     * callback of a superseded search is never called.
+     */
+    public void searchProducts(String query, int categoryId, int limit, Callback<List<Product>> callback) {
+        cancelSearch();
+        final CancellationSignal signal = new CancellationSignal();
+        pendingSearch = signal;
+        execute(db -> signal.isCanceled() ? null : db.searchProducts(query, categoryId, limit, signal), result -> {
+            if (signal.isCanceled()) return;
+            pendingSearch = null;
+            callback.onResult(result);
+        });
+    }
+
+    /**
+     * Typo-tolerant name search for updating results on every keystroke. The name index is
+     * searched in memory under a time budget on the database thread, the thread that edits
+     * it, so a write that compacts the index never holds up the UI. Only the rows of the
+     * hits are then read, from the catalog cache where it has them and otherwise in one query
+     * by primary key. The result is empty until the index has been built, and null when a
+     * newer instant search made this one stale before it ran.
+     */
+    public void instantSearch(String query, int categoryId, int limit, Callback<List<Product>> callback) {
+        final int generation = instantSearchGeneration.incrementAndGet();
+        execute(db -> {
+            if (generation != instantSearchGeneration.get()) return null;
+            TrigramIndex index = nameIndex;
+            if (index == null) return new ArrayList<>();
+            return listRows(db, index.search(query, categoryId, limit,
+                    TrigramIndex.DEFAULT_MIN_SIMILARITY, INSTANT_SEARCH_BUDGET_NANOS));
+        }, callback);
+    }
+
+    /**
+     * Visits every product of the category (0 = all) in the in-memory catalog columns, on
+     * the database thread and without a Product per row, until the visitor returns false.
+     * The callback gets false if the columns aren't built yet (warmUp or an import is
+     * still reading them).
+     */
+    public void forEachCatalogRow(int categoryId, ColumnarCatalog.RowVisitor visitor, Callback<Boolean> callback) {
+        execute(db -> {
+            ColumnarCatalog columns = catalog;
+            if (columns == null) return false;
+            columns.forEach(categoryId, visitor);
+            return true;
+        }, callback);
+    }
+
+    /**
+     * Ids of up to limit products of the category (0 = all) that the filter accepts, from
+     * the in-memory catalog columns on the database thread. The callback gets null if the
+     * columns aren't built yet.
+     */
+    public void filterCatalog(int categoryId, ColumnarCatalog.RowFilter filter, int limit,
+                              Callback<int[]> callback) {
+        execute(db -> {
+            ColumnarCatalog columns = catalog;
+            if (columns == null) return null;
+            int[] ids = new int[limit];
+            int found = columns.filter(categoryId, filter, ids);
+            return found == limit ? ids : Arrays.copyOf(ids, found);
+        }, callback);
+    }
+
+    // Rows for the ids in the same order; ids deleted in the meantime are skipped
+    private List<Product> listRows(DatabaseHelper db, int[] ids) {
+        Product[] cached = new Product[ids.length];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            cached[i] = catalogCache.getProduct(ids[i]);
+            if (cached[i] == null) missing.add(ids[i]);
+        }
+        Map<Integer, Product> read = new HashMap<>();
+        for (Product row : db.getProductListRows(missing)) {
+            read.put(row.getId(), row);
+        }
+        List<Product> rows = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            Product row = cached[i] != null ? cached[i] : read.get(ids[i]);
+            if (row != null) rows.add(row);
+        }
+        return rows;
+    }
+
+    public void cancelSearch() {
+        if (pendingSearch != null) {
+            pendingSearch.cancel();
+            pendingSearch = null;
+        }
+    }
+
+    /**
+     * Product details already in memory, or null. Lets the details screen render its
+     * first frame without waiting for the database thread.
+     */
+    public ProductDetail peekProductDetail(int productId) {
+        return detailCache.get(productId);
+    }
+
+    // The product joined with its category in one query (see DatabaseHelper#getProductDetails)
+    public void getProductDetail(int productId, Callback<ProductDetail> callback) {
+        execute(db -> {
+            ProductDetail cached = detailCache.get(productId);
+            if (cached != null) return cached;
+            ProductDetail detail = db.getProductDetail(productId);
+            if (detail != null) detailCache.put(productId, detail);
+            return detail;
+        }, callback);
+    }
+
+    // Reads the details of the given products that aren't cached yet, all in one query
+    public void prefetchProductDetails(List<Integer> productIds) {
+        List<Integer> missing = new ArrayList<>();
+        for (Integer productId : productIds) {
+            if (missing.size() >= MAX_DETAIL_PREFETCH) break;
+            if (detailCache.get(productId) == null) missing.add(productId);
+        }
+        if (missing.isEmpty()) return;
+        execute(db -> {
+            for (ProductDetail detail : db.getProductDetails(missing)) {
+                detailCache.put(detail.getProduct().getId(), detail);
+            }
+            return null;
+        }, null);
+    }
+
+    public void addProduct(String name, String description, double price, String imagePath,
+                           int categoryId, Callback<Long> callback) {
+        execute(db -> cacheAdded(db, db.addProduct(name, description, price, imagePath, categoryId)), callback);
+    }
+
+    public void addProduct(String name, String description, double price, ProductImage image,
+                           int categoryId, Callback<Long> callback) {
+        execute(db -> cacheAdded(db, db.addProduct(name, description, price, image, categoryId)), callback);
+    }
+
+    public void updateProduct(int id, String name, String description, double price, String imagePath,
+                              int categoryId, Callback<Boolean> callback) {
+        execute(db -> {
+            Product before = rowBeforeWrite(db, id);
+            return cacheUpdated(db, id, before, db.updateProduct(id, name, description, price, imagePath, categoryId));
+        }, callback);
+    }
+
+    public void updateProduct(int id, String name, String description, double price, ProductImage image,
+                              int categoryId, Callback<Boolean> callback) {
+        execute(db -> {
+            Product before = rowBeforeWrite(db, id);
+            return cacheUpdated(db, id, before, db.updateProduct(id, name, description, price, image, categoryId));
+        }, callback);
+    }
+
+    // Updates the product but keeps whatever image is already stored for it
+    public void updateProductKeepingImage(int id, String name, String description, double price,
+                                          int categoryId, Callback<Boolean> callback) {
+        execute(db -> {
+            Product before = rowBeforeWrite(db, id);
+            return cacheUpdated(db, id, before, db.updateProductKeepingImage(id, name, description, price, categoryId));
+        }, callback);
+    }
+
+    public void deleteProduct(int productId, Callback<Boolean> callback) {
+        execute(db -> {
+            cartWriteBuffer.discard(productId); // its line goes with it
+            applyBufferedCartWrites(db); // the rest must be in the table before the total is re-read
+            Product before = rowBeforeWrite(db, productId);
+            boolean deleted = db.deleteProduct(productId);
+            if (deleted) {
+                catalogCache.remove(productId);
+                productChangeLog.recordChange(productId);
+                detailCache.remove(productId);
+                unindexProduct(productId);
+                if (before != null) updateCategoryStats(db, before, null);
+                invalidationTracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS, InvalidationTracker.TABLE_CART);
+                // The product's cart line went with it; its quantity isn't known here
+                cartTotals.reconcile(db.getCartSummary());
+            }
+            return deleted;
+        }, callback);
+    }
+
+    /**
+     * Streams a CSV or JSON catalog file into the products table, see {@link CatalogImporter}.
+     * The format is taken from the first character of the file ('[' means JSON).
+     */
+    public void importCatalog(Uri uri, CatalogImportListener listener) {
+        importExecutor.execute(() -> {
+            try {
+                CatalogImporter.Result result = runCatalogImport(uri, listener);
+                rebuildCatalogIndexes();
+                // The catalog changed under the cache; drop it on the database thread
+                execute(db -> {
+                    catalogCache.invalidateAll();
+                    productChangeLog.recordBulkChange();
+                    if (categoryStats.isLoaded()) loadCategoryStats(db);
+                    invalidationTracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS);
+                    return result;
+                }, listener::onFinished);
+            } catch (Exception e) {
+                e.printStackTrace();
+                // Batches committed before the failure are in the table
+                rebuildCatalogIndexes();
+                execute(db -> {
+                    catalogCache.invalidateAll();
+                    productChangeLog.recordBulkChange();
+                    if (categoryStats.isLoaded()) loadCategoryStats(db);
+                    invalidationTracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS);
+                    return null;
+                }, ignored -> listener.onFailed(e));
+            }
+        });
+    }
+
+    private CatalogImporter.Result runCatalogImport(Uri uri, CatalogImportListener listener) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) throw new IOException("Cannot open " + uri);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            CatalogImporter importer = new CatalogImporter(dbHelper);
+            CatalogImporter.ProgressListener progress = (imported, rejected) ->
+                    mainHandler.post(() -> listener.onProgress(imported, rejected));
+            return startsWithJsonArray(reader)
+                    ? importer.importJson(reader, progress)
+                    : importer.importCsv(reader, progress);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Peeks past leading whitespace (and a UTF-8 BOM) without consuming the first real character
+    private static boolean startsWithJsonArray(BufferedReader reader) throws IOException {
+        int c;
+        reader.mark(1);
+        while ((c = reader.read()) != -1 && (Character.isWhitespace(c) || c == '\uFEFF')) {
+            reader.mark(1);
+        }
+        reader.reset();
+        return c == '[';
+    }
+
+    // Write-through: the stored row is read back by primary key so the cache matches the table exactly
+    private Long cacheAdded(DatabaseHelper db, long newId) {
+        if (newId != -1) {
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS);
+            Product added = db.getProductListRow((int) newId);
+            productChangeLog.recordChange((int) newId);
+            if (added != null) {
+                catalogCache.put(added);
+                indexProduct(added);
+                updateCategoryStats(db, null, added);
+            } else {
+                catalogCache.invalidateAll();
+                productChangeLog.recordBulkChange(); // the row couldn't be read back
+                if (categoryStats.isLoaded()) loadCategoryStats(db);
+            }
+        }
+        return newId;
+    }
+
+    // before is the row read just ahead of the write (null while nobody watches the category numbers)
+    private Boolean cacheUpdated(DatabaseHelper db, int productId, Product before, boolean updated) {
+        if (updated) {
+            detailCache.remove(productId); // re-read with its (possibly new) category on next open
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS);
+            Product stored = db.getProductListRow(productId);
+            productChangeLog.recordChange(productId);
+            if (stored != null) {
+                catalogCache.put(stored);
+                indexProduct(stored);
+                if (before != null) updateCategoryStats(db, before, stored);
+            } else {
+                catalogCache.remove(productId);
+                unindexProduct(productId);
+                if (before != null) updateCategoryStats(db, before, null);
+            }
+        }
+        return updated;
+    }
+
+    // Hit rate of the catalog cache so far, logged when the app goes to the background
+    public void logCatalogCacheStats() {
+        execute(db -> {
+            Log.d(TAG, catalogCache.toString());
+            return null;
+        }, null);
+    }
+
+    // Cart operations
+
+    /**
+     * Cart lines as LiveData. They are read when the cart screen starts observing and
+     * again only after a cart or product write while it observes. The running total is
+     * not touched here; see {@link #reconcileCartTotals()}.
+     */
+    public LiveData<List<CartItem>> getCartItems() {
+        return cartItems;
+    }
+
+    // Checks the in-memory total against one SUM query; meant for when the cart screen comes up
+    public void reconcileCartTotals() {
+        execute(db -> {
+            applyBufferedCartWrites(db);
+            cartTotals.reconcile(db.getCartSummary());
+            return null;
+        }, null);
+    }
+
+    // Running total and unit count, updated in memory by every cart write
+    public LiveData<CartSummary> getCartSummary() {
+        return cartTotals.getSummary();
+    }
+
+    public CartSummary getCartSummarySnapshot() {
+        return cartTotals.getSnapshot();
+    }
+
+    /**
+     * Counts the tap in memory right away (running total included) and writes it
+     * with the other taps of the same short window in one transaction. The callback
+     * runs immediately; a failed flush reconciles the total with the database.
+     */
+    public void addToCart(Product product, Callback<Boolean> callback) {
+        cartTotals.add(product.getPrice(), 1);
+        if (cartWriteBuffer.add(product.getId(), 1)) {
+            mainHandler.postDelayed(scheduledCartFlush, CART_FLUSH_DELAY_MS);
+        }
+        if (callback != null) {
+            callback.onResult(true);
+        }
+    }
+
+    /**
+     * Writes the buffered taps now (e.g. when the app goes to the background). Returns
+     * at once: the write is queued on the database thread, which belongs to the process
+     * rather than to any screen, so it completes after the activity has stopped.
+     */
+    public void flushCartWrites() {
+        mainHandler.removeCallbacks(scheduledCartFlush);
+        execute(db -> {
+            applyBufferedCartWrites(db);
+            return null;
+        }, null);
+    }
+
+    // Database thread only; every cart read or write calls this first so buffered taps come before it
+    private void applyBufferedCartWrites(DatabaseHelper db) {
+        Map<Integer, Integer> deltas = cartWriteBuffer.drain();
+        if (deltas.isEmpty()) return;
+        if (!db.applyCartDeltas(deltas)) {
+            cartTotals.reconcile(db.getCartSummary());
+        }
+        invalidationTracker.notifyChanged(InvalidationTracker.TABLE_CART);
+    }
+
+    /**
+     * Adds delta units to the line (negative takes units away, the last one removes it).
+     * The database applies it as an atomic increment, so quick repeated taps are never lost.
+     */
+    public void changeCartQuantity(CartItem item, int delta, Callback<Boolean> callback) {
+        final int productId = item.getProductId();
+        final double unitPrice = item.getProduct().getPrice();
+        execute(db -> {
+            applyBufferedCartWrites(db);
+            boolean changed = db.changeCartQuantity(productId, delta);
+            if (changed) {
+                cartTotals.add(unitPrice, delta);
+                invalidationTracker.notifyChanged(InvalidationTracker.TABLE_CART);
+            }
+            return changed;
+        }, callback);
+    }
+
+    /**
+     * The running total moves by the difference to the stored line, read after the buffered
+     * taps are written, so taps the item on screen hasn't caught up with still count.
+     */
+    public void setCartQuantity(CartItem item, int quantity, Callback<Boolean> callback) {
+        final int productId = item.getProductId();
+        final double unitPrice = item.getProduct().getPrice();
+        execute(db -> {
+            applyBufferedCartWrites(db);
+            int stored = db.getCartQuantity(productId);
+            boolean updated = db.setCartQuantity(productId, quantity);
+            if (updated) {
+                cartTotals.add(unitPrice, Math.max(quantity, 0) - stored);
+                invalidationTracker.notifyChanged(InvalidationTracker.TABLE_CART);
+            }
+            return updated;
+        }, callback);
+    }
+
+    public void removeFromCart(CartItem item, Callback<Boolean> callback) {
+        final int productId = item.getProductId();
+        final double unitPrice = item.getProduct().getPrice();
+        execute(db -> {
+            applyBufferedCartWrites(db);
+            int stored = db.getCartQuantity(productId);
+            boolean removed = db.removeFromCart(productId);
+            if (removed) {
+                cartTotals.add(unitPrice, -stored);
+                invalidationTracker.notifyChanged(InvalidationTracker.TABLE_CART);
+            }
+            return removed;
+        }, callback);
+    }
+
+    public void clearCart(Callback<Boolean> callback) {
+        mainHandler.removeCallbacks(scheduledCartFlush);
+        cartWriteBuffer.clear();
+        execute(db -> {
+            db.clearCart();
+            cartTotals.clear();
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_CART);
+            return true;
+        }, callback);
+    }
+}
@@ -0,0 +1,378 @@
+package com.example.nutrago.repository;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * In-memory trigram index over product names for typo-tolerant search as you type.
+ * Each word of a name is padded ("  whey ") and cut into three-character grams. A product
+ * matches when it contains enough of the query's grams (shared / query grams), so
+ * "protien" still finds "Whey Protein Isolate"; results are ranked mostly by that coverage
+ * and partly by the Dice coefficient 2 * shared / (query grams + name grams), which puts
+ * names close to the query's length ahead of long names that merely contain it.
+ *
+ * Storage is primitive and columnar: a document slot is its product id, category id and
+ * gram count in parallel int arrays (no Product and no name is kept), grams are packed
+ * into longs, postings are growable int arrays of slots, and the two lookups
+ * (gram -> postings, product id -> slot) are open-addressing long->int tables. Search
+ * returns product ids; the caller reads the rows it shows. Edits append a new slot and
+ * mark the old one removed; removed slots are compacted away once they make up half the
+ * index, by renumbering the postings in place.
+ *
+ * Queries walk the rarest grams first and stop at a time budget, so the best evidence
+ * is always counted even if a very common gram is cut short. A cut-short query judges
+ * coverage against the grams it got to, and ranking what was found also stops at the
+ * budget (after at least `limit` candidates), so an overrun returns the best so far.
+ *
+ * All methods are synchronized; build a fresh index off the main thread and swap it in
+ * rather than filling a live one, and search from the thread that edits it rather than
+ * the UI thread: an edit that triggers compaction holds the lock while it renumbers every
+ * postings list.
+ * While such a fill runs ({@link #startFill()} to {@link #finishFill()}) a removed id is
+ * remembered so the fill doesn't bring it back; outside a fill nothing of it is kept.
+ */
+public class TrigramIndex {
+
+    public static final float DEFAULT_MIN_SIMILARITY = 0.4f;
+    private static final float COVERAGE_WEIGHT = 0.75f;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int INITIAL_POSTINGS = 4;
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+    private static final int RANK_DEADLINE_CHECK_INTERVAL = 256;
+    private static final int NO_SLOT = -1;
+    private static final int REMOVED_ID = -2; // removed before a background fill reached it
+
+    // Document slots
+    private int[] productIds = new int[INITIAL_CAPACITY];
+    private int[] categoryIds = new int[INITIAL_CAPACITY];
+    private int[] gramCounts = new int[INITIAL_CAPACITY];
+    private boolean[] removed = new boolean[INITIAL_CAPACITY];
+    private int slotCount;
+    private int removedCount;
+
+    // gram -> postings list, product id -> slot
+    private final LongIntMap gramLists = new LongIntMap();
+    private final LongIntMap slotsById = new LongIntMap();
+    private int[][] postings = new int[INITIAL_CAPACITY][];
+    private int[] postingSizes = new int[INITIAL_CAPACITY];
+    private int listCount;
+
+    private boolean filling;
+
+    // Per-query scratch, reused between queries (only touched entries are reset)
+    private int[] scores = new int[INITIAL_CAPACITY];
+    private int[] touched = new int[INITIAL_CAPACITY];
+
+    // From here to finishFill, removed ids are remembered for putIfAbsent
+    public synchronized void startFill() {
+        filling = true;
+    }
+
+    // The fill has read every row, so the removal markers have done their job
+    public synchronized void finishFill() {
+        filling = false;
+        long[] markers = new long[slotsById.size];
+        int count = 0;
+        for (int i = 0; i < slotsById.keys.length; i++) {
+            if (slotsById.keys[i] != LongIntMap.EMPTY && slotsById.values[i] == REMOVED_ID) {
+                markers[count++] = slotsById.keys[i];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            slotsById.remove(markers[i]);
+        }
+    }
+
+    /**
+     * For filling the index from a database read while edits keep arriving: a product that
+     * was already put (newer data) or removed since the read is left alone.
+     */
+    public synchronized void putIfAbsent(int productId, int categoryId, String name) {
+        if (slotsById.get(productId) == NO_SLOT) {
+            put(productId, categoryId, name);
+        }
+    }
+
+    public synchronized void put(int productId, int categoryId, String name) {
+        int oldSlot = slotsById.get(productId);
+        if (oldSlot >= 0 && !removed[oldSlot]) {
+            markRemoved(oldSlot);
+        }
+
+        long[] grams = gramsOf(name);
+        int slot = slotCount++;
+        ensureSlotCapacity(slotCount);
+        productIds[slot] = productId;
+        categoryIds[slot] = categoryId;
+        gramCounts[slot] = grams.length;
+        removed[slot] = false;
+        slotsById.put(productId, slot);
+
+        for (long gram : grams) {
+            int list = gramLists.get(gram);
+            if (list < 0) {
+                list = listCount++;
+                ensureListCapacity(listCount);
+                postings[list] = new int[INITIAL_POSTINGS];
+                gramLists.put(gram, list);
+            }
+            int size = postingSizes[list];
+            if (size == postings[list].length) {
+                postings[list] = Arrays.copyOf(postings[list], size * 2);
+            }
+            postings[list][size] = slot;
+            postingSizes[list] = size + 1;
+        }
+        compactIfNeeded();
+    }
+
+    public synchronized void remove(int productId) {
+        int slot = slotsById.get(productId);
+        if (slot >= 0 && !removed[slot]) {
+            markRemoved(slot);
+        }
+        if (filling) {
+            slotsById.put(productId, REMOVED_ID);
+        } else {
+            slotsById.remove(productId);
+        }
+        compactIfNeeded();
+    }
+
+    public synchronized int size() {
+        return slotCount - removedCount;
+    }
+
+    // Ids the index holds an entry for, live or removal markers
+    synchronized int trackedIdCount() {
+        return slotsById.size;
+    }
+
+    /**
+     * Ids of up to limit products whose names contain at least minSimilarity of the query's
+     * grams, best first. categoryId 0 means any category. Counting stops at three quarters
+     * of budgetNanos, leaving the rest for ranking what was found.
+     */
+    public synchronized int[] search(String query, int categoryId, int limit,
+                                     float minSimilarity, long budgetNanos) {
+        long[] queryGrams = gramsOf(query);
+        if (queryGrams.length == 0 || limit <= 0) return new int[0];
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        long scanDeadline = start + budgetNanos / 4 * 3;
+
+        // Rarest grams first
+        int[] lists = new int[queryGrams.length];
+        int listTotal = 0;
+        for (long gram : queryGrams) {
+            int list = gramLists.get(gram);
+            if (list >= 0) lists[listTotal++] = list;
+        }
+        sortByPostingSize(lists, listTotal);
+
+        int touchedCount = 0;
+        int visited = 0;
+        int listsScanned = 0;
+        scan:
+        for (int l = 0; l < listTotal; l++) {
+            int[] slots = postings[lists[l]];
+            int size = postingSizes[lists[l]];
+            listsScanned++;
+            for (int i = 0; i < size; i++) {
+                int slot = slots[i];
+                if (removed[slot]) continue;
+                if (scores[slot]++ == 0) {
+                    touched[touchedCount++] = slot;
+                }
+                if (++visited % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > scanDeadline) {
+                    break scan;
+                }
+            }
+            if (System.nanoTime() > scanDeadline) break;
+        }
+        // Cut short: only the grams scanned can count, or nothing would reach minSimilarity
+        int gramsJudged = listsScanned < listTotal ? listsScanned : queryGrams.length;
+
+        // Keep the best `limit` slots in a small min-heap keyed on similarity
+        int heapCapacity = Math.min(limit, touchedCount);
+        int[] heapSlots = new int[heapCapacity];
+        float[] heapScores = new float[heapCapacity];
+        int heapSize = 0;
+        int ranked = 0;
+        for (int t = 0; t < touchedCount; t++) {
+            int slot = touched[t];
+            int shared = scores[slot];
+            scores[slot] = 0;
+            if (ranked >= limit && ranked % RANK_DEADLINE_CHECK_INTERVAL == 0
+                    && System.nanoTime() > deadline) {
+                // Out of time: the rest only needs its scratch counts cleared
+                for (int rest = t + 1; rest < touchedCount; rest++) scores[touched[rest]] = 0;
+                break;
+            }
+            ranked++;
+            if (categoryId != 0 && categoryIds[slot] != categoryId) continue;
+
+            float coverage = (float) shared / gramsJudged;
+            if (coverage < minSimilarity) continue;
+            float dice = 2f * shared / (queryGrams.length + gramCounts[slot]);
+            float similarity = COVERAGE_WEIGHT * coverage + (1 - COVERAGE_WEIGHT) * dice;
+            if (heapSize < heapCapacity) {
+                heapSlots[heapSize] = slot;
+                heapScores[heapSize] = similarity;
+                siftUp(heapSlots, heapScores, heapSize++);
+            } else if (similarity > heapScores[0]) {
+                heapSlots[0] = slot;
+                heapScores[0] = similarity;
+                siftDown(heapSlots, heapScores, heapSize);
+            }
+        }
+
+        // Pop worst-first, fill from the back
+        int[] ids = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            ids[i] = productIds[heapSlots[0]];
+            heapSlots[0] = heapSlots[i];
+            heapScores[0] = heapScores[i];
+            siftDown(heapSlots, heapScores, i);
+        }
+        return ids;
+    }
+
+    // Lower case, letters and digits only, "  word " padding so word starts weigh more
+    static long[] gramsOf(String text) {
+        if (text == null) return new long[0];
+        String normalized = text.toLowerCase(Locale.ROOT);
+        long[] grams = new long[16];
+        int count = 0;
+        int length = normalized.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(normalized.charAt(i))) i++;
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(normalized.charAt(i))) i++;
+            if (i == start) break;
+
+            // Slide over "  " + word + " "
+            char a = ' ', b = ' ';
+            for (int p = start; p <= i; p++) {
+                char c = p < i ? normalized.charAt(p) : ' ';
+                if (count == grams.length) grams = Arrays.copyOf(grams, count * 2);
+                grams[count++] = ((long) a << 32) | ((long) b << 16) | c;
+                a = b;
+                b = c;
+            }
+        }
+        // Unique grams only
+        Arrays.sort(grams, 0, count);
+        int unique = 0;
+        for (int g = 0; g < count; g++) {
+            if (unique == 0 || grams[unique - 1] != grams[g]) grams[unique++] = grams[g];
+        }
+        return Arrays.copyOf(grams, unique);
+    }
+
+    private void markRemoved(int slot) {
+        removed[slot] = true;
+        removedCount++;
+    }
+
+    // Drops dead slots once half of them are dead: live slots move down in order, so every
+    // postings list and the id table are renumbered in place and stay sorted
+    private void compactIfNeeded() {
+        if (removedCount < INITIAL_CAPACITY || removedCount * 2 < slotCount) return;
+        int[] newSlots = new int[slotCount];
+        int live = 0;
+        for (int s = 0; s < slotCount; s++) {
+            if (removed[s]) {
+                newSlots[s] = NO_SLOT;
+                continue;
+            }
+            productIds[live] = productIds[s];
+            categoryIds[live] = categoryIds[s];
+            gramCounts[live] = gramCounts[s];
+            newSlots[s] = live++;
+        }
+        Arrays.fill(removed, 0, slotCount, false);
+        slotCount = live;
+        removedCount = 0;
+
+        for (int list = 0; list < listCount; list++) {
+            int[] slots = postings[list];
+            int size = 0;
+            for (int i = 0; i < postingSizes[list]; i++) {
+                int slot = newSlots[slots[i]];
+                if (slot != NO_SLOT) slots[size++] = slot;
+            }
+            postingSizes[list] = size;
+        }
+        // Ids point at live slots (or are removal markers, which stay as they are)
+        for (int i = 0; i < slotsById.keys.length; i++) {
+            if (slotsById.keys[i] != LongIntMap.EMPTY && slotsById.values[i] >= 0) {
+                slotsById.values[i] = newSlots[slotsById.values[i]];
+            }
+        }
+    }
+
+    private void ensureSlotCapacity(int needed) {
+        if (needed <= productIds.length) return;
+        int capacity = Math.max(needed, productIds.length * 2);
+        productIds = Arrays.copyOf(productIds, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        gramCounts = Arrays.copyOf(gramCounts, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        touched = Arrays.copyOf(touched, capacity);
+    }
+
+    private void ensureListCapacity(int needed) {
+        if (needed <= postings.length) return;
+        int capacity = Math.max(needed, postings.length * 2);
+        postings = Arrays.copyOf(postings, capacity);
+        postingSizes = Arrays.copyOf(postingSizes, capacity);
+    }
+
+    // Insertion sort: a query has a handful of grams
+    private void sortByPostingSize(int[] lists, int count) {
+        for (int i = 1; i < count; i++) {
+            int list = lists[i];
+            int size = postingSizes[list];
+            int j = i - 1;
+            while (j >= 0 && postingSizes[lists[j]] > size) {
+                lists[j + 1] = lists[j];
+                j--;
+            }
+            lists[j + 1] = list;
+        }
+    }
+
+    private static void siftUp(int[] slots, float[] keys, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (keys[parent] <= keys[index]) break;
+            swap(slots, keys, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] slots, float[] keys, int size) {
+        int index = 0;
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) break;
+            int smallest = left + 1 < size && keys[left + 1] < keys[left] ? left + 1 : left;
+            if (keys[index] <= keys[smallest]) break;
+            swap(slots, keys, index, smallest);
+            index = smallest;
+        }
+    }
+
+    private static void swap(int[] slots, float[] keys, int a, int b) {
+        int slot = slots[a];
+        slots[a] = slots[b];
+        slots[b] = slot;
+        float key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+    }
+}
@@ -1,26 +1,36 @@
 package com.example.nutrago.ui.Gallery;
 
+import android.app.AlertDialog;
+import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.LinearLayout;
-import android.widget.TextView;
+import android.widget.EditText;
 import android.widget.Toast;
 
 import com.example.nutrago.R;
+import com.example.nutrago.adapters.CategoryAdapter;
 import com.example.nutrago.adapters.ProductAdapter;
-import com.example.nutrago.database.DatabaseHelper;
-import com.example.nutrago.models.Product;
-import com.example.nutrago.models.Category;
+import com.example.nutrago.database.CatalogImporter;
+import com.example.nutrago.models.CategorySummary;
 import com.example.nutrago.dialogs.AddProductDialog;
+import com.example.nutrago.repository.ProductRepository;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class GalleryFragment extends Fragment
         implements AddProductDialog.OnProductAddedListener,
@@ -28,11 +38,39 @@ public class GalleryFragment extends Fragment
         ProductAdapter.OnProductEditedListener {
 
     private RecyclerView recyclerView;
+    private LinearLayoutManager layoutManager;
     private ProductAdapter productAdapter;
     private FloatingActionButton fabAddProduct;
-    private LinearLayout categoriesLayout;
-    private DatabaseHelper dbHelper;
-    private int selectedCategoryId = 0; // 0 means "All"
+    private RecyclerView categoriesRecyclerView;
+    private CategoryAdapter categoryAdapter;
+    private EditText searchInput;
+    private ProductRepository repository;
+    // الفئة المختارة والبحث والصفحات المحملة تبقى في الـ ViewModel عبر التدوير والرجوع
+    private GalleryViewModel viewModel;
+
+    private static final int PREFETCH_DISTANCE = 10; // تحميل الصفحة التالية قبل الوصول للنهاية بعشرة صفوف
+
+    // استيراد كتالوج كامل (CSV أو JSON) بالضغط المطوّل على زر الإضافة
+    private static final String[] CATALOG_MIME_TYPES = {
+            "text/csv", "text/comma-separated-values", "application/json", "text/plain"
+    };
+    private static final int MAX_SHOWN_REJECTIONS = 10;
+    private ActivityResultLauncher<String[]> catalogPickerLauncher;
+    private AlertDialog importProgressDialog;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        viewModel = new ViewModelProvider(this).get(GalleryViewModel.class);
+        catalogPickerLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(),
+                uri -> {
+                    if (uri != null) {
+                        startCatalogImport(uri);
+                    }
+                }
+        );
+    }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -42,19 +80,47 @@ public class GalleryFragment extends Fragment
         try {
             recyclerView = root.findViewById(R.id.productRecyclerView);
             fabAddProduct = root.findViewById(R.id.fabAddProduct);
-            categoriesLayout = root.findViewById(R.id.categoriesLayout);
+            categoriesRecyclerView = root.findViewById(R.id.categoriesRecyclerView);
+            searchInput = root.findViewById(R.id.productSearchInput);
 
             // تهيئة قاعدة البيانات
-            dbHelper = new DatabaseHelper(getContext());
+            repository = ProductRepository.getInstance(requireContext());
 
             // تحميل الفئات
             setupCategories();
 
             // تغيير إلى LinearLayoutManager للصفوف
-            recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+            layoutManager = new LinearLayoutManager(getContext());
+            recyclerView.setLayoutManager(layoutManager);
+
+            // adapter واحد طوال عمر الواجهة، وكل إعادة تحميل تُطبق كفروق على القائمة الحالية
+            productAdapter = new ProductAdapter(getActivity(), new ArrayList<>(), repository);
+            productAdapter.setOnProductDeletedListener(this);
+            productAdapter.setOnProductEditedListener(this);
+            recyclerView.setAdapter(productAdapter);
+
+            // تحميل الصفحة التالية عند الاقتراب من نهاية القائمة
+            recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrollStateChanged(RecyclerView rv, int newState) {
+                    // توقف المستخدم عند هذه الصفوف: تجهيز تفاصيلها ليفتح أيها فوراً
+                    if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                        prefetchVisibleDetails();
+                    }
+                }
 
-            // تحميل البيانات من قاعدة البيانات
-            loadProductsFromDatabase(selectedCategoryId);
+                @Override
+                public void onScrolled(RecyclerView rv, int dx, int dy) {
+                    if (dy <= 0) return;
+                    int lastVisible = layoutManager.findLastVisibleItemPosition();
+                    if (lastVisible >= layoutManager.getItemCount() - PREFETCH_DISTANCE) {
+                        viewModel.onListScrolledNearEnd();
+                    }
+                }
+            });
+
+            observeProducts();
+            setupSearch();
 
             // تفعيل زر إضافة منتج جديد
             fabAddProduct.setOnClickListener(v -> {
@@ -62,6 +128,10 @@ public class GalleryFragment extends Fragment
                 dialog.setOnProductAddedListener(this);
                 dialog.show(getParentFragmentManager(), "AddProductDialog");
             });
+            fabAddProduct.setOnLongClickListener(v -> {
+                catalogPickerLauncher.launch(CATALOG_MIME_TYPES);
+                return true;
+            });
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -71,188 +141,177 @@ public class GalleryFragment extends Fragment
         return root;
     }
 
-    private void setupCategories() {
-        try {
-            if (categoriesLayout == null) return;
-
-            // مسح الفئات الموجودة
-            categoriesLayout.removeAllViews();
-
-            // إضافة خيار "All"
-            TextView allCategoryView = createCategoryButton("All", 0, true);
-            categoriesLayout.addView(allCategoryView);
-
-            // جلب الفئات من قاعدة البيانات
-            List<Category> categories = dbHelper.getAllCategories();
-            if (categories != null) {
-                for (Category category : categories) {
-                    TextView categoryView = createCategoryButton(category.getName(), category.getId(), false);
-                    categoriesLayout.addView(categoryView);
+    private void observeProducts() {
+        // القائمة المحملة سابقاً (بعد التدوير أو الرجوع من التفاصيل) تُعرض فوراً في نفس موضع التمرير
+        viewModel.getProducts().observe(getViewLifecycleOwner(), products -> {
+            if (products == null || productAdapter == null) return;
+            boolean toTop = viewModel.consumeScrollToTop();
+            productAdapter.submitList(products, () -> {
+                if (layoutManager == null) return;
+                if (toTop) {
+                    recyclerView.scrollToPosition(0);
+                } else if (viewModel.getListState() != null) {
+                    layoutManager.onRestoreInstanceState(viewModel.getListState());
                 }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            Toast.makeText(getContext(), "Error loading categories", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    private TextView createCategoryButton(String categoryName, int categoryId, boolean isSelected) {
-        TextView categoryButton = new TextView(getContext());
-
-        // تصميم الزر
-        categoryButton.setText(categoryName);
-        categoryButton.setPadding(32, 16, 32, 16);
-        categoryButton.setTextSize(14);
-        categoryButton.setTextAlignment(View.TEXT_ALIGNMENT_CENTER);
-
-        // إعداد المارجن
-        LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.WRAP_CONTENT,
-                LinearLayout.LayoutParams.WRAP_CONTENT
-        );
-        params.setMargins(8, 0, 8, 0);
-        categoryButton.setLayoutParams(params);
-
-        // تطبيق التصميم حسب الحالة
-        updateCategoryButtonStyle(categoryButton, isSelected);
-
-        // إضافة وظيفة الضغط
-        categoryButton.setOnClickListener(v -> {
-            selectedCategoryId = categoryId;
-            updateSelectedCategory();
-            loadProductsFromDatabase(categoryId);
+                viewModel.setListState(null);
+                recyclerView.post(this::prefetchVisibleDetails);
+            });
         });
 
-        return categoryButton;
-    }
-
-    private void updateCategoryButtonStyle(TextView categoryButton, boolean isSelected) {
-        if (isSelected) {
-            // نمط الفئة المختارة
-            categoryButton.setBackgroundColor(0xFF220F84);
-            categoryButton.setTextColor(0xFFFFFFFF);
-            categoryButton.setElevation(4f);
-        } else {
-            // نمط الفئة العادية
-            categoryButton.setBackgroundColor(0xFFE0E0E0);
-            categoryButton.setTextColor(0xFF666666);
-            categoryButton.setElevation(2f);
-        }
+        viewModel.getMessage().observe(getViewLifecycleOwner(), text -> {
+            if (text == null) return;
+            Toast.makeText(getContext(), text, Toast.LENGTH_SHORT).show();
+            viewModel.clearMessage();
+        });
 
-        // إضافة الزوايا المدورة
-        categoryButton.setBackground(createRoundedBackground(isSelected));
+        // تحميل المنتجات عند فتح الشاشة، ثم فقط عند تغيّر جدول المنتجات (إضافة، تعديل، حذف)
+        viewModel.getProductChanges().observe(getViewLifecycleOwner(), viewModel::onProductsChanged);
     }
 
-    private android.graphics.drawable.GradientDrawable createRoundedBackground(boolean isSelected) {
-        android.graphics.drawable.GradientDrawable drawable =
-                new android.graphics.drawable.GradientDrawable();
-        drawable.setCornerRadius(20f);
-
-        if (isSelected) {
-            drawable.setColor(0xFF220F84);
-        } else {
-            drawable.setColor(0xFFE0E0E0);
+    // تفاصيل الصفوف الظاهرة (المنتج + الفئة) تُقرأ باستعلام واحد إلى ذاكرة التفاصيل
+    private void prefetchVisibleDetails() {
+        if (layoutManager == null || productAdapter == null) return;
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) return;
+        List<Integer> productIds = new ArrayList<>();
+        for (int position = first; position <= last && position < productAdapter.getItemCount(); position++) {
+            productIds.add((int) productAdapter.getItemId(position));
         }
-
-        return drawable;
+        viewModel.prefetchDetails(productIds);
     }
 
-    private void updateSelectedCategory() {
-        try {
-            if (categoriesLayout == null) return;
-
-            // تحديث جميع أزرار الفئات
-            for (int i = 0; i < categoriesLayout.getChildCount(); i++) {
-                TextView categoryButton = (TextView) categoriesLayout.getChildAt(i);
-
-                boolean isSelected = false;
-                if (i == 0 && selectedCategoryId == 0) { // "All" button
-                    isSelected = true;
-                } else if (i > 0) {
-                    // للفئات العادية، نحتاج للتحقق من ID الفئة
-                    List<Category> categories = dbHelper.getAllCategories();
-                    if (categories != null && (i - 1) < categories.size()) {
-                        Category category = categories.get(i - 1);
-                        isSelected = (category.getId() == selectedCategoryId);
-                    }
-                }
+    private void setupCategories() {
+        // شريط فئات قابل لإعادة التدوير: الأزرار الظاهرة فقط تُنشأ، والاختيار لا يلمس قاعدة البيانات
+        categoryAdapter = new CategoryAdapter(getContext(), viewModel::selectCategory);
+        categoriesRecyclerView.setLayoutManager(
+                new LinearLayoutManager(getContext(), LinearLayoutManager.HORIZONTAL, false));
+        categoriesRecyclerView.setItemAnimator(null); // تغيير اللون فوراً دون وميض
+        categoriesRecyclerView.setAdapter(categoryAdapter);
+
+        // الفئات تُجلب مرة واحدة، وتُحدّث تلقائياً فقط عند تغيّر جدول الفئات
+        viewModel.getCategories().observe(getViewLifecycleOwner(), categories -> {
+            if (!isAdded() || categoryAdapter == null) return;
+            try {
+                categoryAdapter.setCategories(categories);
+                categoryAdapter.setSelectedCategory(viewModel.getSelectedCategoryId());
+            } catch (Exception e) {
+                e.printStackTrace();
+                Toast.makeText(getContext(), "Error loading categories", Toast.LENGTH_SHORT).show();
+            }
+        });
 
-                updateCategoryButtonStyle(categoryButton, isSelected);
+        // عدد المنتجات في كل فئة من استعلام واحد مجمّع، ويتحدث تلقائياً مع كل إضافة أو تعديل أو حذف
+        viewModel.getCategorySummaries().observe(getViewLifecycleOwner(), summaries -> {
+            if (categoryAdapter == null || summaries == null) return;
+            Map<Integer, Integer> counts = new HashMap<>();
+            for (CategorySummary summary : summaries) {
+                counts.put(summary.getCategoryId(), summary.getProductCount());
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+            categoryAdapter.setCounts(counts);
+        });
     }
 
-    private void loadProductsFromDatabase(int categoryId) {
-        try {
-            List<Product> productList;
-
-            if (categoryId == 0) {
-                // عرض جميع المنتجات
-                productList = dbHelper.getAllProducts();
-            } else {
-                // عرض منتجات فئة محددة
-                productList = dbHelper.getProductsByCategory(categoryId);
+    private void setupSearch() {
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
             }
 
-            if (productList != null) {
-                // إنشاء الـ adapter مع قاعدة البيانات
-                productAdapter = new ProductAdapter(getActivity(), productList, dbHelper);
-
-                // ربط وظيفة الحذف والتعديل
-                productAdapter.setOnProductDeletedListener(this);
-                productAdapter.setOnProductEditedListener(this);
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
 
-                recyclerView.setAdapter(productAdapter);
+            @Override
+            public void afterTextChanged(Editable s) {
+                // النص المستعاد بعد التدوير يساوي البحث الحالي، فلا يُعاد
+                viewModel.setSearchQuery(s.toString().trim());
+            }
+        });
+    }
 
-                // إظهار رسالة إحصائية
-                String message = categoryId == 0 ?
-                        "Showing " + productList.size() + " products" :
-                        "Showing " + productList.size() + " products in selected category";
+    private void startCatalogImport(Uri uri) {
+        importProgressDialog = new AlertDialog.Builder(requireContext())
+                .setTitle("استيراد الكتالوج")
+                .setMessage("جارٍ الاستيراد…")
+                .setCancelable(false)
+                .show();
+
+        // الاستيراد يتم في الخلفية، والقائمة تُحدّث تلقائياً عند انتهائه عبر getProductChanges
+        repository.importCatalog(uri, new ProductRepository.CatalogImportListener() {
+            @Override
+            public void onProgress(int imported, int rejected) {
+                if (importProgressDialog != null) {
+                    importProgressDialog.setMessage("تم استيراد " + imported + " منتج، ورُفض " + rejected + " سطر");
+                }
+            }
 
-                if (productList.isEmpty()) {
-                    message = "No products found in this category";
+            @Override
+            public void onFinished(CatalogImporter.Result result) {
+                dismissImportProgress();
+                if (!isAdded()) return;
+
+                StringBuilder message = new StringBuilder()
+                        .append("تم استيراد ").append(result.getImported()).append(" منتج")
+                        .append(" (").append(result.getRowsPerSecond()).append(" صف/ثانية)\n")
+                        .append("الأسطر المرفوضة: ").append(result.getRejected());
+                List<String> rejectedLines = result.getRejectedLines();
+                for (int i = 0; i < rejectedLines.size() && i < MAX_SHOWN_REJECTIONS; i++) {
+                    message.append("\n• ").append(rejectedLines.get(i));
                 }
+                new AlertDialog.Builder(requireContext())
+                        .setTitle("اكتمل الاستيراد")
+                        .setMessage(message.toString())
+                        .setPositiveButton("حسناً", null)
+                        .show();
+            }
 
-                Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(getContext(), "No products found", Toast.LENGTH_LONG).show();
+            @Override
+            public void onFailed(Exception error) {
+                dismissImportProgress();
+                if (!isAdded()) return;
+                Toast.makeText(getContext(), "فشل استيراد الكتالوج: " + error.getMessage(), Toast.LENGTH_LONG).show();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            Toast.makeText(getContext(), "Error loading products from database", Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    private void dismissImportProgress() {
+        if (importProgressDialog != null) {
+            importProgressDialog.dismiss();
+            importProgressDialog = null;
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // الاستيراد يستمر في الخلفية، نغلق نافذة التقدم فقط
+        dismissImportProgress();
+        // حفظ موضع التمرير لاستعادته عند إنشاء الواجهة من جديد
+        if (layoutManager != null) {
+            viewModel.setListState(layoutManager.onSaveInstanceState());
+        }
+        recyclerView = null;
+        layoutManager = null;
+        productAdapter = null;
+        searchInput = null;
+        categoriesRecyclerView = null;
+        categoryAdapter = null;
+    }
+
+    // إعادة التحميل بعد الإضافة والحذف والتعديل تتم عبر getProductChanges
     @Override
     public void onProductAdded() {
-        // إعادة تحميل القائمة بعد إضافة منتج جديد
-        loadProductsFromDatabase(selectedCategoryId);
         Toast.makeText(getContext(), "Product added successfully", Toast.LENGTH_SHORT).show();
     }
 
     @Override
     public void onProductDeleted() {
-        // إعادة تحميل القائمة بعد حذف منتج
-        loadProductsFromDatabase(selectedCategoryId);
         Toast.makeText(getContext(), "Product deleted successfully", Toast.LENGTH_SHORT).show();
     }
 
     @Override
     public void onProductEdited() {
-        // إعادة تحميل القائمة بعد تعديل منتج
-        loadProductsFromDatabase(selectedCategoryId);
         Toast.makeText(getContext(), "Product updated successfully", Toast.LENGTH_SHORT).show();
     }
-
-    @Override
-    public void onResume() {
-        super.onResume();
-        // إعادة تحميل البيانات عند العودة للشاشة
-        if (dbHelper != null) {
-            setupCategories(); // إعادة تحميل الفئات
-            loadProductsFromDatabase(selectedCategoryId); // إعادة تحميل المنتجات
-        }
-    }
 }
\ No newline at end of file
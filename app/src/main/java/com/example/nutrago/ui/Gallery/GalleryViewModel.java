@@ -0,0 +1,350 @@
+package com.example.nutrago.ui.Gallery;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.nutrago.models.Category;
+import com.example.nutrago.models.CategorySummary;
+import com.example.nutrago.models.Product;
+import com.example.nutrago.repository.ProductRepository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gallery screen state that outlives its views: the selected category, the search
+ * query, the keyset paging position and the rows loaded so far, plus the list's
+ * scroll state. A rotated or re-created gallery re-attaches to what is here and
+ * queries nothing until the products table actually changes.
+ */
+public class GalleryViewModel extends AndroidViewModel {
+
+    // الترقيم بالمفتاح (category_id, id) بدلاً من OFFSET
+    private static final int PAGE_SIZE = 30;
+    // البحث: انتظار توقف الكتابة قبل الاستعلام، والبحث الجديد يلغي السابق
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+    private static final int SEARCH_LIMIT = 100;
+
+    private final ProductRepository repository;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable pendingSearchRun = this::runSearch;
+
+    private final MutableLiveData<List<Product>> products = new MutableLiveData<>();
+    // رسالة تُعرض مرة واحدة (Toast)، والـ fragment يمسحها بعد عرضها
+    private final MutableLiveData<String> message = new MutableLiveData<>();
+
+    private int selectedCategoryId = 0; // 0 means "All"
+    private String searchQuery = ""; // فارغ = عرض الكتالوج بالصفحات
+    private int lastCategoryKey = 0;
+    private int lastIdKey = 0;
+    private boolean isLoadingPage = false;
+    private boolean hasMorePages = true;
+    private int pageGeneration = 0; // يزداد مع كل إعادة تحميل لتجاهل الصفحات القديمة
+    private int loadedVersion = -1; // نسخة جدول المنتجات التي حُمّلت منها القائمة
+    private long loadedChangeSeq; // موضع سجل التغييرات عند آخر تحميل أو تعديل للقائمة
+    private boolean scrollToTop = false;
+    private Parcelable listState; // موضع التمرير عند تدمير الواجهة
+
+    public GalleryViewModel(@NonNull Application application) {
+        super(application);
+        repository = ProductRepository.getInstance(application);
+    }
+
+    public LiveData<List<Product>> getProducts() {
+        return products;
+    }
+
+    public LiveData<String> getMessage() {
+        return message;
+    }
+
+    public void clearMessage() {
+        message.setValue(null);
+    }
+
+    public LiveData<List<Category>> getCategories() {
+        return repository.getCategories();
+    }
+
+    public LiveData<List<CategorySummary>> getCategorySummaries() {
+        return repository.getCategorySummaries();
+    }
+
+    public LiveData<Integer> getProductChanges() {
+        return repository.getProductChanges();
+    }
+
+    public int getSelectedCategoryId() {
+        return selectedCategoryId;
+    }
+
+    public String getSearchQuery() {
+        return searchQuery;
+    }
+
+    public boolean isSearching() {
+        return !searchQuery.isEmpty();
+    }
+
+    // هل يجب إرجاع القائمة لأعلى مع هذه النتائج (فئة جديدة أو بحث جديد)
+    public boolean consumeScrollToTop() {
+        boolean scroll = scrollToTop;
+        scrollToTop = false;
+        return scroll;
+    }
+
+    public Parcelable getListState() {
+        return listState;
+    }
+
+    public void setListState(Parcelable state) {
+        listState = state;
+    }
+
+    // يجهّز تفاصيل المنتجات الظاهرة في ذاكرة المستودع لفتح صفحة التفاصيل بدون انتظار
+    public void prefetchDetails(List<Integer> productIds) {
+        repository.prefetchProductDetails(productIds);
+    }
+
+    /**
+     * Called with every version of the products table. The first version a new view
+     * sees is the one its rows were loaded from, so rotation or coming back from the
+     * details screen reloads nothing.
+     */
+    public void onProductsChanged(int version) {
+        if (version == loadedVersion && products.getValue() != null) return;
+        loadedVersion = version;
+        if (isSearching()) {
+            runSearch();
+        } else {
+            patchLoadedProducts();
+        }
+    }
+
+    public void selectCategory(int categoryId) {
+        selectedCategoryId = categoryId;
+        if (isSearching()) {
+            runSearch(); // البحث داخل الفئة المختارة
+        } else {
+            reloadFromStart(PAGE_SIZE, true);
+        }
+    }
+
+    public void setSearchQuery(String query) {
+        if (query.equals(searchQuery)) return;
+        searchQuery = query;
+
+        mainHandler.removeCallbacks(pendingSearchRun);
+        if (query.isEmpty()) {
+            // العودة للكتالوج بالصفحات
+            repository.cancelSearch();
+            reloadFromStart(PAGE_SIZE, true);
+        } else {
+            // نتائج فورية من الذاكرة مع كل حرف، ثم بحث FTS بعد توقف الكتابة
+            showInstantResults();
+            mainHandler.postDelayed(pendingSearchRun, SEARCH_DEBOUNCE_MS);
+        }
+    }
+
+    // تحميل الصفحة التالية عند الاقتراب من نهاية القائمة
+    public void onListScrolledNearEnd() {
+        if (isLoadingPage || !hasMorePages || isSearching()) return;
+        loadNextPage();
+    }
+
+    // بعد إضافة أو تعديل أو حذف: جلب الصفوف التي تغيرت فقط وتعديلها في مكانها،
+    // والـ adapter يعيد رسم الصفوف المتغيرة فقط دون فقدان موضع التمرير
+    private void patchLoadedProducts() {
+        if (products.getValue() == null) {
+            reloadFromStart(PAGE_SIZE, false);
+            return;
+        }
+        final int generation = pageGeneration;
+        final long changeSeq = repository.getProductChangeSeq();
+        repository.getProductChangesSince(loadedChangeSeq, changes -> {
+            // تجاهل النتيجة إذا أعيد التحميل أو بدأ البحث أثناء الانتظار
+            if (generation != pageGeneration || isSearching()) return;
+            if (changes == null) {
+                // بعد الاستيراد (أو تغييرات كثيرة) لم يعد معروفاً ما تغير
+                refreshLoadedProducts();
+                return;
+            }
+            loadedChangeSeq = changeSeq;
+            List<Product> loaded = products.getValue();
+            List<Product> patched = applyChanges(loaded != null ? loaded : new ArrayList<>(), changes);
+            products.setValue(patched);
+            if (patched.isEmpty() && hasMorePages && !isLoadingPage) {
+                loadNextPage(); // حُذفت كل الصفوف المحملة
+            }
+        });
+    }
+
+    // الصف المحذوف يُزال، والمعدّل أو الجديد يوضع في مكانه حسب المفتاح (category_id, id)
+    private List<Product> applyChanges(List<Product> loaded, Map<Integer, Product> changes) {
+        List<Product> patched = new ArrayList<>(loaded.size() + changes.size());
+        for (Product product : loaded) {
+            if (!changes.containsKey(product.getId())) patched.add(product);
+        }
+        for (Product row : changes.values()) {
+            if (row == null) continue;
+            if (selectedCategoryId != 0 && row.getCategoryId() != selectedCategoryId) continue;
+            // صف بعد آخر مفتاح محمّل سيصل مع الصفحة التالية
+            if (hasMorePages && compareKeys(row.getCategoryId(), row.getId(), lastCategoryKey, lastIdKey) > 0) {
+                continue;
+            }
+            int low = 0;
+            int high = patched.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                Product other = patched.get(middle);
+                if (compareKeys(other.getCategoryId(), other.getId(), row.getCategoryId(), row.getId()) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            patched.add(low, row);
+        }
+        return patched;
+    }
+
+    private static int compareKeys(int categoryA, int idA, int categoryB, int idB) {
+        return categoryA != categoryB ? Integer.compare(categoryA, categoryB) : Integer.compare(idA, idB);
+    }
+
+    // إعادة تحميل كل الصفوف المحملة حالياً دفعة واحدة
+    private void refreshLoadedProducts() {
+        List<Product> loaded = products.getValue();
+        reloadFromStart(Math.max(PAGE_SIZE, loaded != null ? loaded.size() : 0), false);
+    }
+
+    private void reloadFromStart(int limit, boolean toTop) {
+        pageGeneration++;
+        isLoadingPage = true;
+
+        final int generation = pageGeneration;
+        final int categoryId = selectedCategoryId;
+        final long changeSeq = repository.getProductChangeSeq(); // قبل القراءة: ما بعده يُطبّق لاحقاً
+        repository.getProductsPage(categoryId, 0, 0, limit, page -> {
+            // تجاهل النتائج القديمة إذا تغيرت الفئة أو أعيد التحميل أثناء الانتظار
+            if (generation != pageGeneration) return;
+            isLoadingPage = false;
+            if (page == null) {
+                hasMorePages = false;
+                message.setValue("Error loading products from database");
+                return;
+            }
+            loadedChangeSeq = changeSeq;
+
+            hasMorePages = page.size() == limit;
+            if (page.isEmpty()) {
+                lastCategoryKey = 0;
+                lastIdKey = 0;
+                message.setValue(categoryId == 0 ? "No products found" : "No products found in this category");
+            } else {
+                Product last = page.get(page.size() - 1);
+                lastCategoryKey = last.getCategoryId();
+                lastIdKey = last.getId();
+            }
+            scrollToTop = toTop;
+            products.setValue(page);
+        });
+    }
+
+    private void loadNextPage() {
+        isLoadingPage = true;
+
+        final int generation = pageGeneration;
+        final int categoryId = selectedCategoryId;
+        repository.getProductsPage(categoryId, lastCategoryKey, lastIdKey, PAGE_SIZE, page -> {
+            // تجاهل النتائج القديمة إذا تغيرت الفئة أو أعيد التحميل أثناء الانتظار
+            if (generation != pageGeneration) return;
+            isLoadingPage = false;
+            if (page == null) {
+                hasMorePages = false;
+                message.setValue("Error loading products from database");
+                return;
+            }
+
+            hasMorePages = page.size() == PAGE_SIZE;
+            List<Product> loaded = products.getValue();
+            if (!page.isEmpty()) {
+                Product last = page.get(page.size() - 1);
+                lastCategoryKey = last.getCategoryId();
+                lastIdKey = last.getId();
+                List<Product> updated = loaded != null ? new ArrayList<>(loaded) : new ArrayList<>();
+                updated.addAll(page);
+                products.setValue(updated);
+            } else if (loaded == null || loaded.isEmpty()) {
+                message.setValue(categoryId == 0 ? "No products found" : "No products found in this category");
+            }
+        });
+    }
+
+    private void stopPaging() {
+        // إيقاف تحميل الصفحات حتى لا تختلط نتائجها بنتائج البحث
+        pageGeneration++;
+        isLoadingPage = false;
+        hasMorePages = false;
+    }
+
+    // بحث بالتشابه يتحمّل الأخطاء الإملائية، في الذاكرة على خيط قاعدة البيانات ضمن حد زمني،
+    // ثم قراءة صفوف النتائج فقط
+    private void showInstantResults() {
+        stopPaging();
+        final String query = searchQuery;
+        repository.instantSearch(query, selectedCategoryId, SEARCH_LIMIT, results -> {
+            // نتيجة حرف سابق، أو الفهرس لم يُبنَ بعد أو لا تطابق: ننتظر بحث FTS
+            if (!query.equals(searchQuery) || results == null || results.isEmpty()) return;
+            scrollToTop = true;
+            products.setValue(results);
+        });
+    }
+
+    private void runSearch() {
+        if (!isSearching()) return;
+        stopPaging();
+
+        final String query = searchQuery;
+        final int categoryId = selectedCategoryId;
+        repository.searchProducts(query, categoryId, SEARCH_LIMIT, results -> {
+            if (!query.equals(searchQuery)) return;
+            if (results == null) {
+                message.setValue("Error searching products");
+                return;
+            }
+            // مطابقات FTS أولاً ثم المطابقات التقريبية (أخطاء إملائية) التي لم يجدها
+            repository.instantSearch(query, categoryId, SEARCH_LIMIT, similar -> {
+                if (!query.equals(searchQuery) || categoryId != selectedCategoryId) return;
+                List<Product> merged = new ArrayList<>(results);
+                Set<Integer> seen = new HashSet<>();
+                for (Product product : results) seen.add(product.getId());
+                if (similar != null) {
+                    for (Product product : similar) {
+                        if (merged.size() >= SEARCH_LIMIT) break;
+                        if (seen.add(product.getId())) merged.add(product);
+                    }
+                }
+                scrollToTop = true;
+                products.setValue(merged);
+            });
+        });
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        mainHandler.removeCallbacks(pendingSearchRun);
+        repository.cancelSearch();
+    }
+}
@@ -9,14 +9,18 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.nutrago.R;
 import com.example.nutrago.adapters.CartAdapter;
-import com.example.nutrago.database.DatabaseHelper;
-import com.example.nutrago.models.Product;
+import com.example.nutrago.models.CartItem;
+import com.example.nutrago.models.CartSummary;
+import com.example.nutrago.repository.ProductRepository;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class CartFragment extends Fragment {
@@ -26,7 +30,10 @@ public class CartFragment extends Fragment {
     private TextView emptyCartTextView;
     private Button checkoutButton;
     private CartAdapter cartAdapter;
-    private DatabaseHelper dbHelper;
+    private ProductRepository repository;
+    private CartViewModel viewModel;
+    private List<CartItem> currentCart = new ArrayList<>();
+    private final Observer<List<CartItem>> cartItemsObserver = this::showCartItems;
 
     public CartFragment() {
         // Required empty public constructor
@@ -66,22 +73,30 @@ public class CartFragment extends Fragment {
         }
 
         // تهيئة قاعدة البيانات
-        dbHelper = new DatabaseHelper(getContext());
+        repository = ProductRepository.getInstance(requireContext());
+        viewModel = new ViewModelProvider(this).get(CartViewModel.class);
     }
 
     private void setupRecyclerView() {
         cartRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
-        loadCartItems();
+
+        // adapter واحد طوال عمر الشاشة، والتحديثات تُطبق كفروق
+        cartAdapter = new CartAdapter(getContext(), currentCart, repository);
+        cartAdapter.setOnCartChangeListener(this::onCartLinesChanged);
+        cartRecyclerView.setAdapter(cartAdapter);
+
+        // الإجمالي يُحدّث في الذاكرة مع كل إضافة أو حذف، بدون استعلام
+        viewModel.getCartSummary().observe(getViewLifecycleOwner(), this::showTotal);
     }
 
     private void setupCheckoutButton() {
         checkoutButton.setOnClickListener(v -> {
             try {
-                List<Product> cartList = dbHelper.getCartItems();
-                if (cartList == null || cartList.isEmpty()) {
+                CartSummary summary = viewModel.getCartSummarySnapshot();
+                if (summary.isEmpty()) {
                     Toast.makeText(getContext(), "🛒 السلة فارغة!", Toast.LENGTH_SHORT).show();
                 } else {
-                    double total = calculateTotal(cartList);
+                    double total = summary.getTotal();
 
                     // تأثير بصري على الزر
                     checkoutButton.setText("✅ تم الطلب!");
@@ -91,9 +106,7 @@ public class CartFragment extends Fragment {
                             String.format("🎉 شكراً لك! إجمالي الطلب: %.2f ريال", total),
                             Toast.LENGTH_LONG).show();
 
-                    // تنظيف السلة بعد الشراء
-                    dbHelper.clearCart();
-                    loadCartItems(); // إعادة تحميل السلة
+                    viewModel.checkout();
 
                     // إعادة النص بعد 3 ثوان
                     checkoutButton.postDelayed(() -> {
@@ -108,25 +121,22 @@ public class CartFragment extends Fragment {
         });
     }
 
-    private void loadCartItems() {
+    private void showCartItems(List<CartItem> cartList) {
         try {
-            List<Product> cartList = dbHelper.getCartItems();
+            currentCart = cartList != null ? cartList : new ArrayList<>();
 
-            if (cartList != null && !cartList.isEmpty()) {
+            if (!currentCart.isEmpty()) {
                 // عرض قائمة المنتجات
                 cartRecyclerView.setVisibility(View.VISIBLE);
                 emptyCartTextView.setVisibility(View.GONE);
 
-                cartAdapter = new CartAdapter(getContext(), cartList, dbHelper);
-                cartAdapter.setOnCartChangeListener(this::updateTotal);
-                cartRecyclerView.setAdapter(cartAdapter);
-
-                updateTotal();
+                // صف واحد لكل منتج، ويُعاد رسم الأسطر المتغيرة فقط
+                cartAdapter.setItems(currentCart);
             } else {
                 // عرض رسالة السلة الفارغة
+                cartAdapter.setItems(currentCart);
                 cartRecyclerView.setVisibility(View.GONE);
                 emptyCartTextView.setVisibility(View.VISIBLE);
-                totalPriceTextView.setText("Total: 0.00 SAR");
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -134,42 +144,41 @@ public class CartFragment extends Fragment {
         }
     }
 
-    private void updateTotal() {
-        try {
-            List<Product> cartList = dbHelper.getCartItems();
-            double total = calculateTotal(cartList);
-            totalPriceTextView.setText(String.format("الإجمالي: %.2f ريال", total));
-        } catch (Exception e) {
-            e.printStackTrace();
+    private void showTotal(CartSummary summary) {
+        if (summary == null || summary.isEmpty()) {
             totalPriceTextView.setText("Total: 0.00 SAR");
+        } else {
+            totalPriceTextView.setText(String.format("الإجمالي: %.2f ريال", summary.getTotal()));
         }
     }
 
-    private double calculateTotal(List<Product> cartList) {
-        double total = 0;
-        if (cartList != null) {
-            for (Product product : cartList) {
-                total += product.getPrice();
-            }
+    // بعد حذف سطر من السلة، نعرض رسالة السلة الفارغة إذا لم يبق شيء
+    private void onCartLinesChanged() {
+        if (cartAdapter != null && cartAdapter.getItemCount() == 0) {
+            cartRecyclerView.setVisibility(View.GONE);
+            emptyCartTextView.setVisibility(View.VISIBLE);
         }
-        return total;
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        // إعادة تحميل السلة عند العودة للشاشة
-        if (dbHelper != null) {
-            loadCartItems();
-        }
+        // السلة تُقرأ فقط وهي ظاهرة: عند الظهور إن تغيّر جدول السلة أو المنتجات، ثم مع كل تغيير
+        viewModel.getCartItems().observe(getViewLifecycleOwner(), cartItemsObserver);
+        viewModel.onCartShown();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        // التبويب المخفي يبقى STARTED، فنوقف المراقبة حتى لا تُقرأ السلة مع كل إضافة من الجاليري
+        viewModel.getCartItems().removeObserver(cartItemsObserver);
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
         // تنظيف الموارد
-        if (dbHelper != null) {
-            // لا نحتاج لإغلاق قاعدة البيانات هنا
-        }
+        // المستودع مشترك على مستوى التطبيق، لا نحتاج لإغلاقه هنا
     }
 }
\ No newline at end of file
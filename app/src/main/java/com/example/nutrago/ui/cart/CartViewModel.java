@@ -0,0 +1,50 @@
+package com.example.nutrago.ui.cart;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+
+import com.example.nutrago.models.CartItem;
+import com.example.nutrago.models.CartSummary;
+import com.example.nutrago.repository.ProductRepository;
+
+import java.util.List;
+
+/**
+ * Cart screen state. The lines and the total are the repository's observable queries,
+ * which keep their last result; a rotated cart screen gets them back immediately and
+ * they are only re-read after the cart or products tables change.
+ */
+public class CartViewModel extends AndroidViewModel {
+
+    private final ProductRepository repository;
+
+    public CartViewModel(@NonNull Application application) {
+        super(application);
+        repository = ProductRepository.getInstance(application);
+    }
+
+    public LiveData<List<CartItem>> getCartItems() {
+        return repository.getCartItems();
+    }
+
+    public LiveData<CartSummary> getCartSummary() {
+        return repository.getCartSummary();
+    }
+
+    public CartSummary getCartSummarySnapshot() {
+        return repository.getCartSummarySnapshot();
+    }
+
+    // الشاشة ظهرت: نطابق الإجمالي المحفوظ في الذاكرة مع قاعدة البيانات مرة واحدة
+    public void onCartShown() {
+        repository.reconcileCartTotals();
+    }
+
+    public void checkout() {
+        // تنظيف السلة بعد الشراء (المراقب يعيد عرض السلة)
+        repository.clearCart(null);
+    }
+}
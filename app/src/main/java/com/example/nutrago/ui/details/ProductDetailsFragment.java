@@ -1,7 +1,5 @@
 package com.example.nutrago.ui.details;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -15,14 +13,13 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 
 import com.example.nutrago.R;
-import com.example.nutrago.database.DatabaseHelper;
+import com.example.nutrago.images.ImageLoader;
 import com.example.nutrago.models.Product;
-import com.example.nutrago.models.Category;
 import com.example.nutrago.ui.Gallery.GalleryFragment;
 
-import java.io.File;
 
 public class ProductDetailsFragment extends Fragment {
 
@@ -33,7 +30,7 @@ public class ProductDetailsFragment extends Fragment {
     private TextView productName, productDescription, productPrice, productCategory;
     private Button addToCartButton;
 
-    private DatabaseHelper dbHelper;
+    private ProductDetailsViewModel viewModel;
     private int productId;
     private Product currentProduct;
 
@@ -51,7 +48,7 @@ public class ProductDetailsFragment extends Fragment {
         if (getArguments() != null) {
             productId = getArguments().getInt(ARG_PRODUCT_ID);
         }
-        dbHelper = new DatabaseHelper(getContext());
+        viewModel = new ViewModelProvider(this).get(ProductDetailsViewModel.class);
     }
 
     @Nullable
@@ -77,76 +74,57 @@ public class ProductDetailsFragment extends Fragment {
     }
 
     private void loadProductDetails() {
-        try {
-            currentProduct = getProductById(productId);
-
-            if (currentProduct != null) {
-                // عرض اسم المنتج
-                productName.setText(currentProduct.getName());
+        // المنتج يُقرأ مرة واحدة في الـ ViewModel، والتدوير يعيد عرضه بدون استعلام
+        viewModel.load(productId);
+        viewModel.getProduct().observe(getViewLifecycleOwner(), product -> {
+            if (productName == null) return;
+            try {
+                currentProduct = product;
+
+                if (currentProduct != null) {
+                    // عرض اسم المنتج
+                    productName.setText(currentProduct.getName());
+
+                    // عرض الوصف
+                    if (currentProduct.getDescription() != null && !currentProduct.getDescription().isEmpty()) {
+                        productDescription.setText(currentProduct.getDescription());
+                    } else {
+                        productDescription.setText("No description available");
+                    }
+
+                    // عرض السعر
+                    productPrice.setText(String.format("%.2f SAR", currentProduct.getPrice()));
+
+                    // تحميل الصورة
+                    loadProductImage();
 
-                // عرض الوصف
-                if (currentProduct.getDescription() != null && !currentProduct.getDescription().isEmpty()) {
-                    productDescription.setText(currentProduct.getDescription());
                 } else {
-                    productDescription.setText("No description available");
+                    Toast.makeText(getContext(), "Product not found", Toast.LENGTH_SHORT).show();
+                    navigateBack();
                 }
-
-                // عرض السعر
-                productPrice.setText(String.format("%.2f SAR", currentProduct.getPrice()));
-
-                // عرض الفئة
-                loadProductCategory();
-
-                // تحميل الصورة
-                loadProductImage();
-
-            } else {
-                Toast.makeText(getContext(), "Product not found", Toast.LENGTH_SHORT).show();
-                navigateBack();
+            } catch (Exception e) {
+                e.printStackTrace();
+                Toast.makeText(getContext(), "Error loading product details", Toast.LENGTH_SHORT).show();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            Toast.makeText(getContext(), "Error loading product details", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    private Product getProductById(int id) {
-        try {
-            return dbHelper.getProductById(id);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
+        });
 
-    private void loadProductCategory() {
-        try {
-            if (currentProduct.getCategoryId() > 0) {
-                Category category = dbHelper.getCategoryById(currentProduct.getCategoryId());
-                if (category != null) {
-                    productCategory.setText("📂 " + category.getName());
-                } else {
-                    productCategory.setText("📂 Uncategorized");
-                }
-            } else {
-                productCategory.setText("📂 Uncategorized");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            productCategory.setText("📂 Category unavailable");
-        }
+        // عرض الفئة
+        viewModel.getCategoryName().observe(getViewLifecycleOwner(), name -> {
+            if (productCategory == null) return;
+            productCategory.setText(name != null ? "📂 " + name : "📂 Uncategorized");
+        });
     }
 
     private void loadProductImage() {
         try {
-            String imagePath = dbHelper.getImagePath(productId);
+            String imagePath = currentProduct.getImagePath();
 
-            if (isDefaultImage(imagePath)) {
+            if (imagePath == null || isDefaultImage(imagePath)) {
                 // تحميل الصورة الافتراضية
                 productImage.setImageResource(currentProduct.getImageResId());
             } else {
-                // تحميل الصورة المخصصة
-                loadCustomImage(imagePath);
+                // تحميل الصورة المخصصة بحجم صفحة التفاصيل
+                loadCustomImage(currentProduct.getDetailImagePath());
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -163,22 +141,10 @@ public class ProductDetailsFragment extends Fragment {
     }
 
     private void loadCustomImage(String imagePath) {
-        try {
-            File file = new File(getContext().getFilesDir(), imagePath);
-            if (file.exists()) {
-                Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
-                if (bitmap != null) {
-                    productImage.setImageBitmap(bitmap);
-                } else {
-                    productImage.setImageResource(R.drawable.ic_launcher_background);
-                }
-            } else {
-                productImage.setImageResource(R.drawable.ic_launcher_background);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            productImage.setImageResource(R.drawable.ic_launcher_background);
-        }
+        // صورة التفاصيل بعرض الشاشة وارتفاع 250dp
+        android.util.DisplayMetrics metrics = getResources().getDisplayMetrics();
+        ImageLoader.getInstance(requireContext()).load(imagePath, productImage,
+                metrics.widthPixels, (int) (250 * metrics.density), R.drawable.ic_launcher_background);
     }
 
     private void setupClickListeners() {
@@ -190,39 +156,37 @@ public class ProductDetailsFragment extends Fragment {
     }
 
     private void addProductToCart() {
-        try {
-            if (currentProduct != null && dbHelper != null) {
-                boolean success = dbHelper.addToCart(currentProduct.getId());
-
-                if (success) {
-                    // تأثير بصري على الزر
-                    addToCartButton.setText("✅ Added to Cart!");
-                    addToCartButton.setBackgroundColor(0xFF4CAF50); // أخضر
-
-                    // إعادة النص بعد ثانيتين
-                    addToCartButton.postDelayed(() -> {
-                        addToCartButton.setText("🛒 Add to Cart");
-                        addToCartButton.setBackgroundColor(0xFF220F84); // اللون الأصلي
-                    }, 2000);
-
-                    Toast.makeText(getContext(), "✅ " + currentProduct.getName() + " added to cart", Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(getContext(), "❌ Failed to add to cart", Toast.LENGTH_SHORT).show();
-                }
+        if (currentProduct == null) return;
+        final String addedName = currentProduct.getName();
+        viewModel.addToCart(currentProduct, success -> {
+            if (addToCartButton == null) return;
+            if (Boolean.TRUE.equals(success)) {
+                // تأثير بصري على الزر
+                addToCartButton.setText("✅ Added to Cart!");
+                addToCartButton.setBackgroundColor(0xFF4CAF50); // أخضر
+
+                // إعادة النص بعد ثانيتين
+                addToCartButton.postDelayed(() -> {
+                    if (addToCartButton == null) return;
+                    addToCartButton.setText("🛒 Add to Cart");
+                    addToCartButton.setBackgroundColor(0xFF220F84); // اللون الأصلي
+                }, 2000);
+
+                Toast.makeText(getContext(), "✅ " + addedName + " added to cart", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), "❌ Failed to add to cart", Toast.LENGTH_SHORT).show();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            Toast.makeText(getContext(), "❌ Error adding to cart", Toast.LENGTH_SHORT).show();
-        }
+        });
     }
 
     private void navigateBack() {
         try {
-            // العودة إلى صفحة Gallery
-            if (getParentFragmentManager() != null) {
+            // العودة إلى صفحة Gallery المحفوظة كما تُركت (التفاصيل مفتوحة فوقها)
+            if (getParentFragmentManager().getBackStackEntryCount() > 0) {
+                getParentFragmentManager().popBackStack();
+            } else {
                 getParentFragmentManager().beginTransaction()
                         .replace(R.id.nav_host_fragment_activity_main, new GalleryFragment())
-                        .addToBackStack(null)
                         .commit();
             }
         } catch (Exception e) {
@@ -238,6 +202,9 @@ public class ProductDetailsFragment extends Fragment {
     public void onDestroyView() {
         super.onDestroyView();
         // تنظيف المراجع
+        if (productImage != null) {
+            ImageLoader.getInstance(requireContext()).cancel(productImage);
+        }
         backButton = null;
         productImage = null;
         productName = null;
@@ -0,0 +1,67 @@
+package com.example.nutrago.ui.details;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.nutrago.models.Product;
+import com.example.nutrago.models.ProductDetail;
+import com.example.nutrago.repository.ProductRepository;
+
+/**
+ * The product shown by a details screen and its category name, read once per product
+ * with a single joined query. When the gallery already prefetched the product, both
+ * are set before the first frame; rotating shows them again without another query.
+ */
+public class ProductDetailsViewModel extends AndroidViewModel {
+
+    private final ProductRepository repository;
+    // لا قيمة حتى ينتهي التحميل؛ null بعده يعني أن المنتج غير موجود
+    private final MutableLiveData<Product> product = new MutableLiveData<>();
+    // null = بدون فئة
+    private final MutableLiveData<String> categoryName = new MutableLiveData<>();
+    private int loadedProductId = -1;
+
+    public ProductDetailsViewModel(@NonNull Application application) {
+        super(application);
+        repository = ProductRepository.getInstance(application);
+    }
+
+    public LiveData<Product> getProduct() {
+        return product;
+    }
+
+    public LiveData<String> getCategoryName() {
+        return categoryName;
+    }
+
+    // يُستدعى مع كل إنشاء للواجهة، والقراءة تتم مرة واحدة فقط لكل منتج
+    public void load(int productId) {
+        if (productId == loadedProductId) return;
+        loadedProductId = productId;
+
+        // المنتج في الذاكرة (جلبه المعرض مسبقاً): العرض فوراً بدون انتظار قاعدة البيانات
+        ProductDetail cached = repository.peekProductDetail(productId);
+        if (cached != null) {
+            show(cached);
+            return;
+        }
+        repository.getProductDetail(productId, detail -> {
+            if (productId != loadedProductId) return;
+            show(detail);
+        });
+    }
+
+    private void show(ProductDetail detail) {
+        // الفئة أولاً حتى تكون جاهزة عند عرض المنتج
+        categoryName.setValue(detail != null ? detail.getCategoryName() : null);
+        product.setValue(detail != null ? detail.getProduct() : null);
+    }
+
+    public void addToCart(Product toAdd, ProductRepository.Callback<Boolean> callback) {
+        repository.addToCart(toAdd, callback);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.nutrago.database;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CsvRecordReaderTest {
+
+    private static final int MAX_LENGTH = 40;
+
+    @Test
+    public void plainFieldsAreSplitOnCommas() throws IOException {
+        CsvRecordReader reader = reader("name,price\nWhey,19.5\n");
+
+        assertEquals(Arrays.asList("name", "price"), reader.readRecord());
+        assertEquals(Arrays.asList("Whey", "19.5"), reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void quotedFieldsKeepCommasAndEscapedQuotes() throws IOException {
+        CsvRecordReader reader = reader("\"Bar, chocolate\",\"the \"\"best\"\" one\",2\n");
+
+        assertEquals(Arrays.asList("Bar, chocolate", "the \"best\" one", "2"), reader.readRecord());
+    }
+
+    @Test
+    public void quotedNewlinesStayInOneRecord() throws IOException {
+        CsvRecordReader reader = reader("a,\"line one\nline two\nline three\",1\nb,plain,2\n");
+
+        assertEquals(Arrays.asList("a", "line one\nline two\nline three", "1"), reader.readRecord());
+        assertEquals(1, reader.getRecordLine());
+        assertEquals(Arrays.asList("b", "plain", "2"), reader.readRecord());
+        assertEquals(4, reader.getRecordLine());
+    }
+
+    @Test
+    public void crlfLineEndingsAreAccepted() throws IOException {
+        CsvRecordReader reader = reader("a,\"x\r\ny\",1\r\nb,z,2\r\n");
+
+        assertEquals(Arrays.asList("a", "x\ny", "1"), reader.readRecord());
+        assertEquals(Arrays.asList("b", "z", "2"), reader.readRecord());
+    }
+
+    @Test
+    public void emptyAndTrailingFieldsAreKept() throws IOException {
+        CsvRecordReader reader = reader("a,,\n\n\"\",b\n");
+
+        assertEquals(Arrays.asList("a", "", ""), reader.readRecord());
+        assertEquals(Arrays.asList(""), reader.readRecord());
+        assertEquals(Arrays.asList("", "b"), reader.readRecord());
+    }
+
+    @Test
+    public void quoteInsideAnUnquotedFieldIsPlainText() throws IOException {
+        // Must not open a quoted field that would swallow the following lines
+        CsvRecordReader reader = reader("Screen 5\" wide,3\nnext,4\n");
+
+        assertEquals(Arrays.asList("Screen 5\" wide", "3"), reader.readRecord());
+        assertEquals(Arrays.asList("next", "4"), reader.readRecord());
+    }
+
+    @Test
+    public void overLongRecordIsSkippedToItsEnd() throws IOException {
+        String longText = repeat('x', MAX_LENGTH);
+        CsvRecordReader reader = reader("first,1\n"
+                + "long,\"" + longText + "\n" + longText + ",still,quoted\n" + longText + "\",9\n"
+                + "after,2\n");
+
+        assertEquals(Arrays.asList("first", "1"), reader.readRecord());
+        assertMalformed(reader, "longer than");
+        assertEquals(2, reader.getRecordLine());
+        // The lines inside the bad record's quotes are not read as records
+        assertEquals(Arrays.asList("after", "2"), reader.readRecord());
+        assertEquals(5, reader.getRecordLine());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void overLongUnquotedLineIsOneRecord() throws IOException {
+        CsvRecordReader reader = reader(repeat('y', MAX_LENGTH + 1) + ",1\nafter,2\n");
+
+        assertMalformed(reader, "longer than");
+        assertEquals(Arrays.asList("after", "2"), reader.readRecord());
+    }
+
+    @Test
+    public void textAfterAClosingQuoteIsMalformed() throws IOException {
+        CsvRecordReader reader = reader("\"Whey\"extra,1\nok,2\n");
+
+        assertMalformed(reader, "after a closing quote");
+        assertEquals(1, reader.getRecordLine());
+        assertEquals(Arrays.asList("ok", "2"), reader.readRecord());
+    }
+
+    @Test
+    public void malformedQuotedRecordStillEndsWhereItsQuoteCloses() throws IOException {
+        CsvRecordReader reader = reader("\"a\"b,\"open\nclosed\",1\nok,2\n");
+
+        assertMalformed(reader, "after a closing quote");
+        assertEquals(Arrays.asList("ok", "2"), reader.readRecord());
+        assertEquals(3, reader.getRecordLine());
+    }
+
+    @Test
+    public void quoteLeftOpenAtTheEndIsMalformed() throws IOException {
+        CsvRecordReader reader = reader("ok,1\nbad,\"never closed\nmore\n");
+
+        assertEquals(Arrays.asList("ok", "1"), reader.readRecord());
+        assertMalformed(reader, "not closed");
+        assertEquals(2, reader.getRecordLine());
+        assertNull(reader.readRecord());
+    }
+
+    private static CsvRecordReader reader(String csv) {
+        return new CsvRecordReader(new BufferedReader(new StringReader(csv)), MAX_LENGTH);
+    }
+
+    private static void assertMalformed(CsvRecordReader reader, String reason) throws IOException {
+        try {
+            List<String> record = reader.readRecord();
+            fail("expected a malformed record, got " + record);
+        } catch (CsvRecordReader.MalformedRecordException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
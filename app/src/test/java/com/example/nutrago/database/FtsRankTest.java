@@ -0,0 +1,95 @@
+package com.example.nutrago.database;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class FtsRankTest {
+
+    private static final double[] WEIGHTS = {3.0, 1.0}; // name, description
+    private static final int ROWS = 1000;
+
+    @Test
+    public void nameHitBeatsDescriptionHit() {
+        double inName = FtsRank.score(oneTerm(hits(1, 0), rowsWithTerm(10, 10), lengths(3, 20)), WEIGHTS);
+        double inDescription = FtsRank.score(oneTerm(hits(0, 1), rowsWithTerm(10, 10), lengths(3, 20)), WEIGHTS);
+
+        assertTrue(inName > inDescription);
+    }
+
+    @Test
+    public void moreHitsScoreHigherButSaturate() {
+        double one = FtsRank.score(oneTerm(hits(0, 1), rowsWithTerm(10, 10), lengths(3, 20)), WEIGHTS);
+        double two = FtsRank.score(oneTerm(hits(0, 2), rowsWithTerm(10, 10), lengths(3, 20)), WEIGHTS);
+        double ten = FtsRank.score(oneTerm(hits(0, 10), rowsWithTerm(10, 10), lengths(3, 20)), WEIGHTS);
+
+        assertTrue(two > one);
+        assertTrue(ten > two);
+        // Ten mentions are not worth five times two
+        assertTrue(ten < 5 * two);
+    }
+
+    @Test
+    public void rareTermBeatsCommonTerm() {
+        double rare = FtsRank.score(oneTerm(hits(1, 0), rowsWithTerm(5, 5), lengths(3, 20)), WEIGHTS);
+        double common = FtsRank.score(oneTerm(hits(1, 0), rowsWithTerm(900, 900), lengths(3, 20)), WEIGHTS);
+
+        assertTrue(rare > common);
+        assertTrue(common > 0);
+    }
+
+    @Test
+    public void hitInAShortNameBeatsHitInALongName() {
+        double shortName = FtsRank.score(oneTerm(hits(1, 0), rowsWithTerm(10, 10), lengths(2, 20)), WEIGHTS);
+        double longName = FtsRank.score(oneTerm(hits(1, 0), rowsWithTerm(10, 10), lengths(9, 20)), WEIGHTS);
+
+        assertTrue(shortName > longName);
+    }
+
+    @Test
+    public void everyTermAddsToTheScore() {
+        // "whey iso": both words hit the name
+        byte[] both = matchInfo(2, new int[]{3, 20}, new int[]{2, 10},
+                new int[]{1, 10, 10, 0, 40, 40,
+                        1, 5, 5, 0, 0, 0});
+        double one = FtsRank.score(oneTerm(hits(1, 0), rowsWithTerm(10, 10), lengths(2, 10)), WEIGHTS);
+
+        assertTrue(FtsRank.score(both, WEIGHTS) > one);
+    }
+
+    @Test
+    public void noHitsScoreZero() {
+        assertEquals(0.0, FtsRank.score(oneTerm(hits(0, 0), rowsWithTerm(10, 10), lengths(3, 20)), WEIGHTS), 0.0);
+    }
+
+    private static int[] hits(int name, int description) {
+        return new int[]{name, description};
+    }
+
+    private static int[] rowsWithTerm(int name, int description) {
+        return new int[]{name, description};
+    }
+
+    private static int[] lengths(int name, int description) {
+        return new int[]{name, description};
+    }
+
+    private static byte[] oneTerm(int[] hits, int[] rowsWithTerm, int[] lengths) {
+        return matchInfo(1, new int[]{3, 20}, lengths, new int[]{
+                hits[0], rowsWithTerm[0] * 2, rowsWithTerm[0],
+                hits[1], rowsWithTerm[1] * 2, rowsWithTerm[1]});
+    }
+
+    // Same layout as matchinfo(..., 'pcnalx') for the two-column products_fts table
+    private static byte[] matchInfo(int terms, int[] averageLengths, int[] lengths, int[] x) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * (3 + 2 + 2 + x.length)).order(ByteOrder.nativeOrder());
+        buffer.putInt(terms).putInt(2).putInt(ROWS);
+        for (int length : averageLengths) buffer.putInt(length);
+        for (int length : lengths) buffer.putInt(length);
+        for (int value : x) buffer.putInt(value);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.nutrago.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CartWriteBufferTest {
+
+    private CartWriteBuffer buffer;
+
+    @Before
+    public void setUp() {
+        buffer = new CartWriteBuffer();
+    }
+
+    @Test
+    public void onlyTheFirstTapAsksForAFlush() {
+        assertTrue(buffer.add(1, 1));
+        assertFalse(buffer.add(1, 1));
+        assertFalse(buffer.add(2, 1));
+    }
+
+    @Test
+    public void repeatedTapsFoldIntoOneDeltaPerProduct() {
+        buffer.add(1, 1);
+        buffer.add(1, 1);
+        buffer.add(1, 1);
+        buffer.add(2, 1);
+
+        Map<Integer, Integer> deltas = buffer.drain();
+
+        assertEquals(2, deltas.size());
+        assertEquals(Integer.valueOf(3), deltas.get(1));
+        assertEquals(Integer.valueOf(1), deltas.get(2));
+    }
+
+    @Test
+    public void deltasThatCancelOutLeaveNothingToWrite() {
+        buffer.add(1, 2);
+        buffer.add(1, -2);
+
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.drain().isEmpty());
+    }
+
+    @Test
+    public void drainStartsAFreshBuffer() {
+        buffer.add(1, 1);
+        Map<Integer, Integer> first = buffer.drain();
+
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.add(1, 1));
+        // The drained map belongs to the flusher and no longer changes
+        assertEquals(Integer.valueOf(1), first.get(1));
+        assertEquals(1, first.size());
+    }
+
+    @Test
+    public void discardReturnsThePendingUnits() {
+        buffer.add(1, 4);
+        buffer.add(2, 1);
+
+        assertEquals(4, buffer.discard(1));
+        assertEquals(0, buffer.discard(1));
+        assertEquals(0, buffer.discard(3));
+        assertNull(buffer.drain().get(1));
+    }
+
+    @Test
+    public void clearDropsEverything() {
+        buffer.add(1, 1);
+        buffer.add(2, 1);
+
+        buffer.clear();
+
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.add(3, 1));
+    }
+
+    @Test
+    public void concurrentTapsAreNeverLost() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) buffer.add(7, 1);
+            });
+            threads[t].start();
+        }
+        int drained = 0;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                Integer units = buffer.drain().get(7);
+                if (units != null) drained += units;
+            }
+        }
+        Integer rest = buffer.drain().get(7);
+        if (rest != null) drained += rest;
+
+        assertEquals(4000, drained);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.nutrago.repository;
+
+import com.example.nutrago.models.Product;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CatalogCacheTest {
+
+    private static final int PAGE = 3;
+
+    private CatalogCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new CatalogCache();
+    }
+
+    @Test
+    public void firstPageIsAMissThenAHit() {
+        assertNull(cache.getPage(0, 0, 0, PAGE));
+        cache.putPage(0, 0, 0, PAGE, rows(product(1, 1), product(2, 1), product(3, 2)));
+
+        List<Product> page = cache.getPage(0, 0, 0, PAGE);
+
+        assertEquals(ids(1, 2, 3), idsOf(page));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void pageBeyondAnIncompletePrefixIsAMiss() {
+        cache.putPage(0, 0, 0, PAGE, rows(product(1, 1), product(2, 1), product(3, 2)));
+
+        assertNull(cache.getPage(0, 2, 3, PAGE));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void shortPageCompletesTheCategory() {
+        cache.putPage(0, 0, 0, PAGE, rows(product(1, 1), product(2, 1), product(3, 2)));
+        cache.putPage(0, 2, 3, PAGE, rows(product(4, 2)));
+
+        assertEquals(ids(4), idsOf(cache.getPage(0, 2, 3, PAGE)));
+        // Past the end of a complete category the answer is an empty page, not a miss
+        assertEquals(ids(), idsOf(cache.getPage(0, 2, 4, PAGE)));
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void pageThatDoesNotContinueThePrefixIsIgnored() {
+        cache.putPage(0, 5, 50, PAGE, rows(product(51, 5)));
+
+        assertNull(cache.getPage(0, 0, 0, PAGE));
+        assertNull(cache.getProduct(51));
+    }
+
+    @Test
+    public void putMovesAnEditedRowToItsNewCategory() {
+        cache.putPage(1, 0, 0, PAGE, rows(product(1, 1), product(2, 1)));
+        cache.putPage(2, 0, 0, PAGE, rows(product(3, 2)));
+
+        cache.put(product(1, 2));
+
+        assertEquals(ids(2), idsOf(cache.getPage(1, 0, 0, PAGE)));
+        assertEquals(ids(1, 3), idsOf(cache.getPage(2, 0, 0, PAGE)));
+        assertEquals(2, cache.getProduct(1).getCategoryId());
+    }
+
+    @Test
+    public void putBeyondAnIncompletePrefixWaitsForItsPage() {
+        cache.putPage(0, 0, 0, PAGE, rows(product(1, 1), product(2, 1), product(3, 1)));
+
+        cache.put(product(9, 3));
+
+        assertEquals(ids(1, 2, 3), idsOf(cache.getPage(0, 0, 0, PAGE)));
+        assertNull(cache.getPage(0, 1, 3, PAGE));
+    }
+
+    @Test
+    public void removeDropsTheRowEverywhere() {
+        cache.putPage(0, 0, 0, PAGE, rows(product(1, 1), product(2, 1)));
+        cache.putPage(1, 0, 0, PAGE, rows(product(1, 1), product(2, 1)));
+
+        cache.remove(1);
+
+        assertEquals(ids(2), idsOf(cache.getPage(0, 0, 0, PAGE)));
+        assertEquals(ids(2), idsOf(cache.getPage(1, 0, 0, PAGE)));
+        assertNull(cache.getProduct(1));
+    }
+
+    @Test
+    public void invalidateAllForgetsEverything() {
+        cache.putPage(0, 0, 0, PAGE, rows(product(1, 1)));
+
+        cache.invalidateAll();
+
+        assertNull(cache.getPage(0, 0, 0, PAGE));
+        assertNull(cache.getProduct(1));
+    }
+
+    @Test
+    public void toStringReportsTheHitRate() {
+        cache.putPage(0, 0, 0, PAGE, rows(product(1, 1)));
+        cache.getProduct(1);
+        cache.getProduct(2);
+        cache.getProduct(1);
+        cache.getProduct(3);
+
+        assertEquals("CatalogCache{hits=2, misses=2, hitRate=50%}", cache.toString());
+    }
+
+    private static Product product(int id, int categoryId) {
+        return new Product(id, "Product " + id, "", 10.0, 0, categoryId);
+    }
+
+    private static List<Product> rows(Product... products) {
+        List<Product> rows = new ArrayList<>();
+        for (Product product : products) rows.add(product);
+        return rows;
+    }
+
+    private static List<Integer> ids(int... ids) {
+        List<Integer> list = new ArrayList<>();
+        for (int id : ids) list.add(id);
+        return list;
+    }
+
+    private static List<Integer> idsOf(List<Product> products) {
+        assertNotNull(products);
+        List<Integer> list = new ArrayList<>();
+        for (Product product : products) list.add(product.getId());
+        return list;
+    }
+}
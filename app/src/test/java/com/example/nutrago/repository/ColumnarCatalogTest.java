@@ -0,0 +1,142 @@
+package com.example.nutrago.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColumnarCatalogTest {
+
+    private ColumnarCatalog catalog;
+
+    @Before
+    public void setUp() {
+        catalog = new ColumnarCatalog();
+    }
+
+    @Test
+    public void forEachVisitsOnlyTheCategorysLiveRows() {
+        catalog.put(1, 1, 10.0, "Whey Protein");
+        catalog.put(2, 2, 4.5, "Rice Cakes");
+        catalog.put(3, 1, 25.0, "Whey Isolate");
+        catalog.remove(3);
+
+        int[] visitedIds = new int[4];
+        int[] count = {0};
+        int visited = catalog.forEach(1, (row, id, categoryId, price) -> {
+            visitedIds[count[0]++] = id;
+            assertEquals(1, categoryId);
+            return true;
+        });
+
+        assertEquals(1, visited);
+        assertEquals(1, visitedIds[0]);
+        assertEquals(2, catalog.forEach(0, (row, id, categoryId, price) -> id != 2)); // stops at 2
+        assertEquals(2, catalog.size());
+    }
+
+    @Test
+    public void filterWritesMatchingIdsUpToTheArrayLength() {
+        for (int id = 1; id <= 10; id++) {
+            catalog.put(id, id % 2 == 0 ? 2 : 1, id * 1.5, "Item " + id);
+        }
+
+        int[] out = new int[10];
+        int found = catalog.filter(2, (id, categoryId, price) -> price >= 6.0, out);
+        assertEquals(Arrays.asList(4, 6, 8, 10), toList(out, found));
+
+        int[] small = new int[2];
+        assertEquals(2, catalog.filter(0, (id, categoryId, price) -> true, small));
+    }
+
+    @Test
+    public void putReplacesTheOldRow() {
+        catalog.put(1, 1, 10.0, "Whey Protein");
+        catalog.put(1, 2, 12.0, "Whey Protein Isolate");
+
+        int row = catalog.rowOf(1);
+        assertEquals(1, catalog.size());
+        assertEquals("Whey Protein Isolate", catalog.getName(row));
+        double[] price = {0};
+        catalog.forEach(2, (r, id, categoryId, p) -> {
+            price[0] = p;
+            return true;
+        });
+        assertEquals(12.0, price[0], 0.0);
+        assertEquals(0, catalog.forEach(1, (r, id, categoryId, p) -> true));
+    }
+
+    @Test
+    public void equalNamesShareOneEntryOfThePool() {
+        catalog.put(1, 1, 10.0, "Protein Bar");
+        catalog.put(2, 2, 11.0, "Protein Bar");
+        catalog.put(3, 2, 12.0, "Rice Cakes");
+
+        int first = catalog.rowOf(1);
+        int second = catalog.rowOf(2);
+        assertEquals(2, catalog.nameCount());
+        assertEquals(catalog.nameOffset(first), catalog.nameOffset(second));
+        assertEquals("Protein Bar".length(), catalog.nameLength(first));
+        assertEquals("Protein Bar", new String(catalog.nameChars(),
+                catalog.nameOffset(first), catalog.nameLength(first)));
+
+        catalog.remove(1);
+        catalog.remove(2);
+        assertEquals(1, catalog.nameCount());
+        catalog.put(4, 1, 9.0, "Protein Bar"); // an unused entry comes back into use
+        assertEquals(2, catalog.nameCount());
+    }
+
+    @Test
+    public void compactionKeepsEachSurvivorsColumnsAndName() {
+        for (int id = 1; id <= 600; id++) {
+            catalog.put(id, id % 2 == 0 ? 2 : 1, id, "Item " + id);
+        }
+        for (int id = 1; id <= 400; id++) {
+            catalog.remove(id); // well past half: rows and names are rewritten
+        }
+
+        assertEquals(200, catalog.size());
+        assertEquals(200, catalog.nameCount());
+        assertEquals(ColumnarCatalog.NO_ROW, catalog.rowOf(400));
+        for (int id = 401; id <= 600; id++) {
+            int row = catalog.rowOf(id);
+            assertEquals("Item " + id, catalog.getName(row));
+        }
+        catalog.forEach(0, (row, id, categoryId, price) -> {
+            assertTrue(id > 400);
+            assertEquals(id % 2 == 0 ? 2 : 1, categoryId);
+            assertEquals(id, price, 0.0);
+            return true;
+        });
+    }
+
+    @Test
+    public void fillDoesNotOverwriteNewerEditsOrBringBackRemovals() {
+        catalog.startFill();
+        catalog.put(1, 1, 20.0, "Whey Isolate"); // edited after the fill's read
+        catalog.remove(2); // deleted after the fill's read
+
+        catalog.putIfAbsent(1, 1, 15.0, "Old Name");
+        catalog.putIfAbsent(2, 1, 5.0, "Whey Cookies");
+        catalog.putIfAbsent(3, 1, 7.0, "Whey Bar");
+        catalog.finishFill();
+
+        assertEquals(2, catalog.size());
+        assertEquals("Whey Isolate", catalog.getName(catalog.rowOf(1)));
+        assertEquals(ColumnarCatalog.NO_ROW, catalog.rowOf(2));
+        // The marker is gone, so a later add of that id is taken
+        catalog.putIfAbsent(2, 1, 5.0, "Whey Cookies");
+        assertEquals(3, catalog.size());
+    }
+
+    private static List<Integer> toList(int[] values, int count) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) list.add(values[i]);
+        return list;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.nutrago.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ProductChangeLogTest {
+
+    private static final int CAPACITY = 4;
+
+    private ProductChangeLog log;
+
+    @Before
+    public void setUp() {
+        log = new ProductChangeLog(CAPACITY);
+    }
+
+    @Test
+    public void nothingChangedYet() {
+        assertEquals(0, log.getSeq());
+        assertEquals(Collections.emptySet(), log.changedSince(0));
+    }
+
+    @Test
+    public void changesAfterAPointAreListedOnceOldestFirst() {
+        log.recordChange(7);
+        long seen = log.getSeq();
+        log.recordChange(3);
+        log.recordChange(9);
+        log.recordChange(3);
+
+        assertEquals(Arrays.asList(3, 9), new ArrayList<>(log.changedSince(seen)));
+        assertEquals(Arrays.asList(7, 3, 9), new ArrayList<>(log.changedSince(0)));
+        assertEquals(Collections.emptySet(), log.changedSince(log.getSeq()));
+    }
+
+    @Test
+    public void pointOlderThanTheRingIsUnknown() {
+        for (int id = 1; id <= CAPACITY + 1; id++) {
+            log.recordChange(id);
+        }
+
+        assertNull(log.changedSince(0));
+        assertEquals(Arrays.asList(2, 3, 4, 5), new ArrayList<>(log.changedSince(1)));
+    }
+
+    @Test
+    public void bulkChangeMakesEarlierPointsUnknown() {
+        log.recordChange(1);
+        long beforeImport = log.getSeq();
+        log.recordBulkChange();
+        long afterImport = log.getSeq();
+        log.recordChange(2);
+
+        assertNull(log.changedSince(beforeImport));
+        assertEquals(Collections.singleton(2), log.changedSince(afterImport));
+    }
+}
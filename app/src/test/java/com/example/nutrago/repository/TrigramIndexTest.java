@@ -0,0 +1,162 @@
+package com.example.nutrago.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrigramIndexTest {
+
+    private static final long NO_BUDGET_LIMIT = Long.MAX_VALUE / 2;
+
+    private TrigramIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TrigramIndex();
+    }
+
+    @Test
+    public void typoStillFindsTheName() {
+        index.put(1, 1, "Whey Protein Isolate");
+        index.put(2, 2, "Rice Cakes");
+
+        int[] results = search("protien", 0);
+
+        assertEquals(1, results.length);
+        assertEquals(1, results[0]);
+    }
+
+    @Test
+    public void closerNameRanksFirst() {
+        index.put(1, 1, "Protein Bar Chocolate Peanut Caramel");
+        index.put(2, 1, "Protein Bar");
+
+        int[] results = search("protein bar", 0);
+
+        assertEquals(2, results[0]);
+        assertEquals(1, results[1]);
+    }
+
+    @Test
+    public void categoryFilterKeepsOnlyThatCategory() {
+        index.put(1, 1, "Whey Protein");
+        index.put(2, 2, "Whey Cookies");
+
+        int[] results = search("whey", 2);
+
+        assertEquals(1, results.length);
+        assertEquals(2, results[0]);
+    }
+
+    @Test
+    public void putReplacesTheOldName() {
+        index.put(1, 1, "Whey Protein");
+        index.put(1, 1, "Rice Cakes");
+
+        assertEquals(0, search("whey", 0).length);
+        assertEquals(1, search("rice", 0).length);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void fillDoesNotOverwriteNewerEditsOrBringBackRemovals() {
+        index.startFill();
+        index.put(1, 1, "Whey Isolate"); // edited after the fill's read
+        index.remove(2); // deleted after the fill's read
+
+        index.putIfAbsent(1, 1, "Old Name");
+        index.putIfAbsent(2, 1, "Whey Cookies");
+        index.putIfAbsent(3, 1, "Whey Bar");
+        index.finishFill();
+
+        int[] results = search("whey", 0);
+        assertEquals(2, results.length);
+        assertEquals(0, search("old name", 0).length);
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void searchOutOfBudgetStillReturnsTheBestSoFar() {
+        String[] words = {"Whey", "Protein", "Bar", "Rice", "Oat", "Peanut", "Isolate", "Cookie"};
+        for (int id = 1; id <= 20000; id++) {
+            index.put(id, 1 + id % 3, words[id % 8] + " " + words[(id / 8) % 8] + " " + id);
+        }
+
+        // Out of time before the first gram list ends
+        int[] results = index.search("protien bar", 0, 10, TrigramIndex.DEFAULT_MIN_SIMILARITY, 1);
+
+        assertTrue(results.length > 0);
+        for (int id : results) {
+            assertTrue(id >= 1 && id <= 20000);
+        }
+        // The scratch counts were cleared, so the next full search is not skewed
+        assertEquals(10, search("protein bar", 0).length);
+    }
+
+    @Test
+    public void removalMarkersAreDroppedWhenTheFillFinishes() {
+        index.startFill();
+        for (int id = 1; id <= 100; id++) {
+            index.remove(id);
+        }
+        assertEquals(100, index.trackedIdCount());
+
+        index.finishFill();
+
+        assertEquals(0, index.trackedIdCount());
+    }
+
+    @Test
+    public void removeOutsideAFillLeavesNothingBehind() {
+        for (int id = 1; id <= 2000; id++) {
+            index.put(id, 1, "Product " + id);
+        }
+        for (int id = 1; id <= 2000; id += 2) {
+            index.remove(id);
+        }
+
+        assertEquals(1000, index.size());
+        assertEquals(1000, index.trackedIdCount());
+        // The ids that stayed are still reachable after the removals and compaction
+        index.put(2000, 1, "Whey Isolate");
+        assertEquals(1000, index.size());
+        assertEquals(2000, search("whey isolate", 0)[0]);
+    }
+
+    @Test
+    public void compactionKeepsEachSurvivorsNameAndCategory() {
+        for (int id = 1; id <= 600; id++) {
+            index.put(id, id % 2 == 0 ? 2 : 1, "Item " + id);
+        }
+        for (int id = 1; id <= 400; id++) {
+            index.remove(id); // well past half: the slots are renumbered
+        }
+
+        assertEquals(200, index.size());
+        assertEquals(599, search("item 599", 0)[0]);
+        assertEquals(598, search("item 598", 2)[0]);
+        for (int id : search("item 59", 2)) {
+            assertTrue(id > 400 && id % 2 == 0);
+        }
+    }
+
+    @Test
+    public void longIntMapRemoveKeepsCollidingKeysReachable() {
+        LongIntMap map = new LongIntMap();
+        for (int key = 0; key < 500; key++) {
+            map.put(key, key * 10);
+        }
+        for (int key = 0; key < 500; key += 3) {
+            map.remove(key);
+        }
+
+        for (int key = 0; key < 500; key++) {
+            assertEquals(key % 3 == 0 ? -1 : key * 10, map.get(key));
+        }
+    }
+
+    private int[] search(String query, int categoryId) {
+        return index.search(query, categoryId, 10, TrigramIndex.DEFAULT_MIN_SIMILARITY, NO_BUDGET_LIMIT);
+    }
+}